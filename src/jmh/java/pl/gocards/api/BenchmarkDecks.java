@@ -0,0 +1,39 @@
+package pl.gocards.api;
+
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic decks shared by the benchmarks.
+ */
+public final class BenchmarkDecks {
+
+    public static final Timestamp CREATED_AT = Timestamp.valueOf("2024-11-01 10:00:00");
+
+    private BenchmarkDecks() {
+    }
+
+    public static String cardId(int index) {
+        return "00000000-0000-0000-0000-%012d".formatted(index);
+    }
+
+    public static List<Card> cards(int deckSize) {
+        var cards = new ArrayList<Card>(deckSize);
+        for (int i = 1; i <= deckSize; i++) {
+            cards.add(new Card(
+                    cardId(i),
+                    i,
+                    new CardFront("term-" + i),
+                    new CardBack("definition-" + i),
+                    CREATED_AT,
+                    CREATED_AT
+            ));
+        }
+        return cards;
+    }
+}
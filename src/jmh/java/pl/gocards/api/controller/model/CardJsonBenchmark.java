@@ -0,0 +1,66 @@
+package pl.gocards.api.controller.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pl.gocards.api.BenchmarkDecks;
+import pl.gocards.api.entity.Card;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Serializes a deck with an {@link ObjectMapper} configured the way Spring Boot configures the WebFlux codecs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CardJsonBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int deckSize;
+
+    private ObjectMapper objectMapper;
+
+    private List<Card> cards;
+
+    private List<UpdateCardResponse> responses;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        cards = BenchmarkDecks.cards(deckSize);
+
+        Map<String, String> cardIdMapToClientId = cards.stream()
+                .collect(Collectors.toMap(Card::id, card -> "client-" + card.ordinal()));
+        responses = cards.stream()
+                .map(card -> UpdateCardResponse.fromDomain(card, cardIdMapToClientId))
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] writeCards() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(cards);
+    }
+
+    @Benchmark
+    public byte[] writeUpdateCardResponses() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(responses);
+    }
+
+    @Benchmark
+    public List<UpdateCardResponse> mapUpdateCardResponses() {
+        Map<String, String> cardIdMapToClientId = responses.stream()
+                .collect(Collectors.toMap(UpdateCardResponse::id, UpdateCardResponse::clientId));
+        return cards.stream()
+                .map(card -> UpdateCardResponse.fromDomain(card, cardIdMapToClientId))
+                .toList();
+    }
+}
@@ -0,0 +1,61 @@
+package pl.gocards.api.controller.model;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pl.gocards.api.BenchmarkDecks;
+import pl.gocards.api.entity.Card;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and reads a deck in each wire format served by {@code GET /deck/{deckId}/cards}, with the mappers configured
+ * like the WebFlux codecs. The payload sizes are compared by {@code CardControllerIntegrationTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CardWireFormatBenchmark {
+
+    @Param({"json", "smile"})
+    public String format;
+
+    @Param({"100", "10000"})
+    public int deckSize;
+
+    private ObjectMapper objectMapper;
+
+    private List<Card> cards;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = switch (format) {
+            case "json" -> Jackson2ObjectMapperBuilder.json()
+                    .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                    .build();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile()
+                    .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                    .build();
+            default -> throw new IllegalArgumentException(format);
+        };
+        cards = BenchmarkDecks.cards(deckSize);
+        payload = objectMapper.writeValueAsBytes(cards);
+    }
+
+    @Benchmark
+    public byte[] writeCards() throws IOException {
+        return objectMapper.writeValueAsBytes(cards);
+    }
+
+    @Benchmark
+    public List<Card> readCards() throws IOException {
+        return objectMapper.readValue(payload, new TypeReference<>() {
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package pl.gocards.api.controller.model;
+
+import org.openjdk.jmh.annotations.*;
+import pl.gocards.api.BenchmarkDecks;
+import pl.gocards.api.entity.Card;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps a PUT cards request to the domain, with every tenth card new so that the UUID generation is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UpdateCardRequestBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int deckSize;
+
+    private List<UpdateCardRequest> requests;
+
+    @Setup
+    public void setUp() {
+        requests = BenchmarkDecks.cards(deckSize).stream()
+                .map(card -> UpdateCardRequest.builder()
+                        .id(card.ordinal() % 10 == 0 ? null : card.id())
+                        .clientId("client-" + card.ordinal())
+                        .front(card.front())
+                        .back(card.back())
+                        .build())
+                .toList();
+    }
+
+    @Benchmark
+    public List<Card> toDomain() {
+        return UpdateCardRequest.toDomain(requests, new HashMap<>());
+    }
+}
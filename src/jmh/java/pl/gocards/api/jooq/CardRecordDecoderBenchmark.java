@@ -0,0 +1,100 @@
+package pl.gocards.api.jooq;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.*;
+import pl.gocards.api.BenchmarkDecks;
+import pl.gocards.api.entity.BackType;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.FrontType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static pl.gocards.api.jooq.Tables.*;
+
+/**
+ * Decodes the rows of the card / card_front / card_back join, or of the card table alone for
+ * {@link StorageLayout#denormalized}, without a database, so that only the decoding and the timestamp
+ * conversions are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CardRecordDecoderBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int deckSize;
+
+    @Param({"normalized", "denormalized"})
+    public StorageLayout layout;
+
+    private static final Field<?>[] DENORMALIZED_FIELDS = {
+            CARD.ID,
+            CARD.ORDINAL,
+            CARD.CREATED_AT,
+            CARD.UPDATED_AT,
+            CARD.TERM,
+            CARD.DEFINITION
+    };
+
+    private static final Field<?>[] FIELDS = {
+            CARD.ID,
+            CARD.ORDINAL,
+            CARD.CREATED_AT,
+            CARD.UPDATED_AT,
+            CARD_FRONT.NAME,
+            CARD_FRONT.CONTENT,
+            CARD_BACK.NAME,
+            CARD_BACK.CONTENT
+    };
+
+    private Result<Record> records;
+
+    @Setup
+    public void setUp() {
+        var dsl = DSL.using(SQLDialect.POSTGRES);
+        var denormalized = layout == StorageLayout.denormalized;
+        var fields = denormalized ? DENORMALIZED_FIELDS : FIELDS;
+        var result = dsl.newResult(fields);
+
+        var createdAt = BenchmarkDecks.CREATED_AT.toLocalDateTime();
+        for (Card card : BenchmarkDecks.cards(deckSize)) {
+            var record = dsl.newRecord(fields);
+            if (denormalized) {
+                record.fromArray(
+                        card.id(),
+                        card.ordinal(),
+                        createdAt,
+                        createdAt,
+                        card.front().term(),
+                        card.back().definition()
+                );
+            } else {
+                record.fromArray(
+                        card.id(),
+                        card.ordinal(),
+                        createdAt,
+                        createdAt,
+                        FrontType.term.name(),
+                        card.front().term(),
+                        BackType.definition.name(),
+                        card.back().definition()
+                );
+            }
+            result.add(record);
+        }
+        records = result;
+    }
+
+    @Benchmark
+    public List<Card> decode() {
+        var cards = new ArrayList<Card>(deckSize);
+        new CardRecordDecoder(records.iterator()).forEachRemaining(cards::add);
+        return cards;
+    }
+}
@@ -0,0 +1,64 @@
+package pl.gocards.api.service;
+
+import org.openjdk.jmh.annotations.*;
+import pl.gocards.api.BenchmarkDecks;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardDiff;
+import pl.gocards.api.entity.CardFront;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffs a stored deck against a typical sync request: every tenth term edited, the first card deleted,
+ * which shifts the ordinals of all the others, and one card appended.
+ * <p>
+ * {@link #sparseChanged()} assigns sparse ordinals first, as {@link CardService} does, so the deletion no longer
+ * turns into a move of every card.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CardDiffEngineBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int deckSize;
+
+    private final CardDiffEngine engine = new HashCardDiffEngine();
+
+    private List<Card> existingCards;
+
+    private List<Card> unchangedCards;
+
+    private List<Card> changedCards;
+
+    @Setup
+    public void setUp() {
+        existingCards = BenchmarkDecks.cards(deckSize);
+        unchangedCards = List.copyOf(existingCards);
+
+        changedCards = new ArrayList<>(deckSize);
+        int ordinal = 0;
+        for (Card card : existingCards.subList(1, deckSize)) {
+            var front = card.ordinal() % 10 == 0 ? new CardFront(card.front().term() + "-edited") : card.front();
+            changedCards.add(new Card(card.id(), ++ordinal, front, card.back(), null, null));
+        }
+        changedCards.add(new Card(BenchmarkDecks.cardId(deckSize + 1), ++ordinal));
+    }
+
+    @Benchmark
+    public CardDiff unchanged() {
+        return engine.diff(existingCards, unchangedCards);
+    }
+
+    @Benchmark
+    public CardDiff changed() {
+        return engine.diff(existingCards, changedCards);
+    }
+
+    @Benchmark
+    public CardDiff sparseChanged() {
+        return engine.diff(existingCards, SparseOrdinals.assign(existingCards, changedCards));
+    }
+}
@@ -0,0 +1,256 @@
+package pl.gocards.api.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import pl.gocards.api.controller.model.DeckRequest;
+import pl.gocards.api.controller.model.DeckResponse;
+import pl.gocards.api.controller.model.UpdateCardRequest;
+import pl.gocards.api.controller.model.UpdateCardResponse;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Drives the card endpoints over HTTP and writes one {@link ScenarioResult} per scenario to
+ * {@code gocards.load-test.output}. Each scenario is warmed up before it is measured.
+ * <p>
+ * The results are compared with those of the previous run, which may have used another
+ * {@code gocards.blocking.mode}; the comparison then shows the p99 of each scenario in both modes.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@Import(StatementRecorder.Configuration.class)
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "logging.level.org.jooq=INFO",
+                "logging.level.org.springframework.transaction=INFO",
+                "logging.level.org.springframework.jdbc=INFO"
+        }
+)
+public class CardSyncLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CardSyncLoadTest.class);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private StatementRecorder statementRecorder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${gocards.load-test.deck-size:1000}")
+    private int deckSize;
+
+    @Value("${gocards.load-test.requests:500}")
+    private int requests;
+
+    @Value("${gocards.load-test.concurrency:8}")
+    private int concurrency;
+
+    @Value("${gocards.load-test.output:build/load-test/results.json}")
+    private Path output;
+
+    @Value("${gocards.blocking.mode:bounded-elastic}")
+    private String blockingMode;
+
+    private WebClient webClient;
+
+    private final List<ScenarioResult> results = new ArrayList<>();
+
+    private final AtomicInteger conflicts = new AtomicInteger();
+
+    private record LoadDeck(String id, List<UpdateCardRequest> cards) {
+    }
+
+    private record Report(Instant finishedAt, List<ScenarioResult> scenarios) {
+    }
+
+    @BeforeAll
+    public void setUp() {
+        webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + port)
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(-1))
+                .build();
+    }
+
+    @Test
+    @Order(1)
+    public void Scenario_FetchCards() {
+        var deck = createDeck();
+
+        run("GET /deck/{id}/cards", i -> webClient.get()
+                .uri("/deck/{deckId}/cards", deck.id())
+                .retrieve()
+                .bodyToFlux(UpdateCardResponse.class)
+                .then());
+    }
+
+    /**
+     * Every request sends the whole deck with one term edited. Requests are spread over one deck per worker,
+     * so the compare-and-set of the deck version rarely has to wait or retry.
+     */
+    @Test
+    @Order(2)
+    public void Scenario_FullSync() {
+        var decks = IntStream.range(0, concurrency)
+                .mapToObj(i -> createDeck())
+                .toList();
+
+        run("PUT /deck/{id}/cards", i -> sync(decks.get(i % decks.size()), i));
+    }
+
+    /**
+     * Like {@link #Scenario_FullSync()}, but all workers write to the same deck. Their compare-and-sets of its
+     * version wait for each other, and the losers compute their writes again; a write that loses on each of
+     * {@code gocards.cards.update-attempts} attempts is answered with 409, which is counted instead of failing the
+     * scenario.
+     */
+    @Test
+    @Order(3)
+    public void Scenario_ConcurrentWritersToSameDeck() {
+        var deck = createDeck();
+
+        run("PUT /deck/{id}/cards, same deck", i -> sync(deck, i));
+    }
+
+    @AfterAll
+    public void writeResults() throws IOException {
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        var previousOutput = output.resolveSibling("results-previous.json");
+        if (Files.exists(output)) {
+            Files.move(output, previousOutput, StandardCopyOption.REPLACE_EXISTING);
+            logComparison(objectMapper.readValue(previousOutput.toFile(), Report.class));
+        }
+        objectMapper.writerWithDefaultPrettyPrinter()
+                .writeValue(output.toFile(), new Report(Instant.now(), results));
+        log.info("Load test results written to {}", output.toAbsolutePath());
+    }
+
+    private void run(String name, IntFunction<Mono<Void>> request) {
+        execute(Math.min(requests, 50), request);
+
+        statementRecorder.reset();
+        conflicts.set(0);
+        long start = System.nanoTime();
+        var latencies = execute(requests, request);
+        var duration = Duration.ofNanos(System.nanoTime() - start);
+
+        var result = ScenarioResult.of(
+                name, blockingMode, concurrency, deckSize, latencies, duration, statementRecorder, conflicts.get()
+        );
+        log.info("{}", result);
+        results.add(result);
+    }
+
+    private long[] execute(int count, IntFunction<Mono<Void>> request) {
+        var latencies = new long[count];
+        Flux.range(0, count)
+                .flatMap(i -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return request.apply(i)
+                            .doOnSuccess(ignored -> latencies[i] = System.nanoTime() - start);
+                }), concurrency)
+                .blockLast();
+        return latencies;
+    }
+
+    private Mono<Void> sync(LoadDeck deck, int iteration) {
+        var cards = new ArrayList<>(deck.cards());
+        int index = iteration % cards.size();
+        var card = cards.get(index);
+        cards.set(index, new UpdateCardRequest(
+                card.id(),
+                card.clientId(),
+                new CardFront("term-" + index + "-" + iteration),
+                card.back()
+        ));
+
+        return webClient.put()
+                .uri("/deck/{deckId}/cards", deck.id())
+                .bodyValue(cards)
+                .retrieve()
+                .bodyToFlux(UpdateCardResponse.class)
+                .then()
+                .onErrorResume(WebClientResponseException.Conflict.class, e -> {
+                    conflicts.incrementAndGet();
+                    return Mono.empty();
+                });
+    }
+
+    private LoadDeck createDeck() {
+        var deck = webClient.post()
+                .uri("/deck")
+                .bodyValue(new DeckRequest("load-test"))
+                .retrieve()
+                .bodyToMono(DeckResponse.class)
+                .block();
+
+        var newCards = IntStream.rangeClosed(1, deckSize)
+                .mapToObj(i -> new UpdateCardRequest(
+                        null,
+                        "client-id-" + i,
+                        new CardFront("term-" + i),
+                        new CardBack("definition-" + i)
+                ))
+                .toList();
+
+        var created = webClient.put()
+                .uri("/deck/{deckId}/cards", deck.id())
+                .bodyValue(newCards)
+                .retrieve()
+                .bodyToFlux(UpdateCardResponse.class)
+                .map(it -> new UpdateCardRequest(it.id(), it.clientId(), it.front(), it.back()))
+                .collectList()
+                .block();
+
+        return new LoadDeck(deck.id(), created);
+    }
+
+    private void logComparison(Report previous) {
+        Map<String, ScenarioResult> previousByName = previous.scenarios().stream()
+                .collect(Collectors.toMap(ScenarioResult::name, Function.identity()));
+
+        for (var result : results) {
+            var before = previousByName.get(result.name());
+            if (before != null) {
+                log.info("{} ({} -> {}): throughput {} -> {} req/s, p99 {} -> {} ms, statements/request {} -> {}, "
+                                + "retries {} -> {}, conflicts {} -> {}",
+                        result.name(),
+                        before.blockingMode(), result.blockingMode(),
+                        Math.round(before.throughputPerSecond()), Math.round(result.throughputPerSecond()),
+                        Math.round(before.latencyP99Ms()), Math.round(result.latencyP99Ms()),
+                        before.statementsPerRequest(), result.statementsPerRequest(),
+                        before.retries(), result.retries(),
+                        before.conflicts(), result.conflicts());
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package pl.gocards.api.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The outcome of one load scenario, as written to the results file. Latencies are in milliseconds.
+ * <p>
+ * {@code blockingMode} is the {@code gocards.blocking.mode} the app ran the blocking calls in.
+ * <p>
+ * {@code retries} counts the writes computed again after losing the compare-and-set of the deck version, and
+ * {@code conflicts} the requests answered with 409 after losing it on every attempt.
+ */
+public record ScenarioResult(
+        String name,
+        String blockingMode,
+        int requests,
+        int concurrency,
+        int deckSize,
+        double durationMs,
+        double throughputPerSecond,
+        double latencyP50Ms,
+        double latencyP90Ms,
+        double latencyP99Ms,
+        double latencyMaxMs,
+        double statementsPerRequest,
+        double compareAndSetAvgMs,
+        double compareAndSetTotalMs,
+        long retries,
+        int conflicts
+) {
+
+    public static ScenarioResult of(
+            String name,
+            String blockingMode,
+            int concurrency,
+            int deckSize,
+            long[] latencyNanos,
+            Duration duration,
+            StatementRecorder statementRecorder,
+            int conflicts
+    ) {
+        var sorted = latencyNanos.clone();
+        Arrays.sort(sorted);
+        int requests = sorted.length;
+        long compareAndSets = statementRecorder.compareAndSets();
+        double compareAndSetTotalMs = toMillis(statementRecorder.compareAndSetTime().toNanos());
+
+        return new ScenarioResult(
+                name,
+                blockingMode,
+                requests,
+                concurrency,
+                deckSize,
+                toMillis(duration.toNanos()),
+                requests / (duration.toNanos() / 1e9),
+                toMillis(percentile(sorted, 0.50)),
+                toMillis(percentile(sorted, 0.90)),
+                toMillis(percentile(sorted, 0.99)),
+                toMillis(sorted[requests - 1]),
+                (double) statementRecorder.statements() / requests,
+                compareAndSets == 0 ? 0 : compareAndSetTotalMs / compareAndSets,
+                compareAndSetTotalMs,
+                // The last lost compare-and-set of a request answered with 409 is not retried.
+                statementRecorder.lostCompareAndSets() - conflicts,
+                conflicts
+        );
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,95 @@
+package pl.gocards.api.load;
+
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+import org.jooq.ExecuteListenerProvider;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the statements executed by jOOQ, and times the compare-and-set of the deck version, which under load is
+ * dominated by waiting for a concurrent writer of the same deck to commit. A compare-and-set that updates no row
+ * lost to that writer, and its write is computed again or answered with 409.
+ * <p>
+ * A batch counts as one statement, so the count matches the number of round trips.
+ *
+ * @see pl.gocards.api.jooq.DeckRepository#compareAndSetVersion
+ */
+public class StatementRecorder implements ExecuteListener {
+
+    private static final String COMPARE_AND_SET_START = StatementRecorder.class.getName() + ".compareAndSetStart";
+
+    private static final Pattern COMPARE_AND_SET = Pattern.compile(
+            "^update \"public\"\\.\"deck\" .* where .*\"deck\"\\.\"version\" = \\?.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL
+    );
+
+    private final LongAdder statements = new LongAdder();
+
+    private final LongAdder compareAndSets = new LongAdder();
+
+    private final LongAdder lostCompareAndSets = new LongAdder();
+
+    private final LongAdder compareAndSetNanos = new LongAdder();
+
+    @Override
+    public void executeStart(ExecuteContext ctx) {
+        statements.increment();
+        if (ctx.sql() != null && COMPARE_AND_SET.matcher(ctx.sql()).matches()) {
+            ctx.data(COMPARE_AND_SET_START, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        if (ctx.data(COMPARE_AND_SET_START) instanceof Long start) {
+            compareAndSets.increment();
+            compareAndSetNanos.add(System.nanoTime() - start);
+            if (ctx.rows() == 0) {
+                lostCompareAndSets.increment();
+            }
+        }
+    }
+
+    public void reset() {
+        statements.reset();
+        compareAndSets.reset();
+        lostCompareAndSets.reset();
+        compareAndSetNanos.reset();
+    }
+
+    public long statements() {
+        return statements.sum();
+    }
+
+    public long compareAndSets() {
+        return compareAndSets.sum();
+    }
+
+    public long lostCompareAndSets() {
+        return lostCompareAndSets.sum();
+    }
+
+    public Duration compareAndSetTime() {
+        return Duration.ofNanos(compareAndSetNanos.sum());
+    }
+
+    @TestConfiguration
+    public static class Configuration {
+
+        @Bean
+        public StatementRecorder statementRecorder() {
+            return new StatementRecorder();
+        }
+
+        @Bean
+        public ExecuteListenerProvider statementRecorderProvider(StatementRecorder statementRecorder) {
+            return new DefaultExecuteListenerProvider(statementRecorder);
+        }
+    }
+}
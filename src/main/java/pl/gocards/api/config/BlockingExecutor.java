@@ -0,0 +1,135 @@
+package pl.gocards.api.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordingStream;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pl.gocards.api.metrics.SqlStats;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking jOOQ repository calls off the WebFlux event loop.
+ * <p>
+ * {@code gocards.blocking.mode=bounded-elastic} (default) uses Reactor's bounded elastic pool.
+ * {@code gocards.blocking.mode=virtual-threads} starts a virtual thread per call instead; the number of calls
+ * running at once is then bounded by {@code gocards.blocking.permits}, which defaults to the JDBC pool size,
+ * so that the virtual threads queue here rather than on Postgres.
+ * <p>
+ * The {@link SqlStats} of the HTTP request are bound to the thread running the call.
+ */
+@Component
+public class BlockingExecutor implements DisposableBean {
+
+    private static final String VIRTUAL_THREADS = "virtual-threads";
+
+    private final Scheduler scheduler;
+
+    private final Semaphore permits;
+
+    private final Timer permitWait;
+
+    private final RecordingStream pinnedEvents;
+
+    public BlockingExecutor(
+            @Value("${gocards.blocking.mode:bounded-elastic}") String mode,
+            @Value("${gocards.blocking.permits:${spring.datasource.hikari.maximum-pool-size:10}}") int permits,
+            @Value("${gocards.blocking.pinned-threshold:20ms}") Duration pinnedThreshold,
+            MeterRegistry meterRegistry
+    ) {
+        if (VIRTUAL_THREADS.equals(mode)) {
+            this.scheduler = Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "jdbc-virtual");
+            this.permits = new Semaphore(permits, true);
+            this.pinnedEvents = recordPinnedEvents(pinnedThreshold, meterRegistry);
+            meterRegistry.gauge("gocards.blocking.permits.available", this.permits, Semaphore::availablePermits);
+        } else {
+            this.scheduler = Schedulers.boundedElastic();
+            this.permits = null;
+            this.pinnedEvents = null;
+        }
+        this.permitWait = Timer.builder("gocards.blocking.permit.wait")
+                .description("Time spent waiting for a JDBC permit before running a blocking call")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> mono(Callable<T> task) {
+        return Mono.deferContextual(context -> {
+                    var sqlStats = SqlStats.from(context);
+                    return Mono.using(
+                            this::acquire,
+                            permit -> Mono.fromCallable(() -> SqlStats.call(sqlStats, task)),
+                            this::release
+                    );
+                })
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * The permit is held until the returned publisher terminates or is cancelled,
+     * so lazily streamed results keep their connection accounted for.
+     * <p>
+     * Cancellation, such as a client disconnecting, usually comes from the event loop; it is passed on from a
+     * blocking thread, since closing a stream can close its cursor and connection.
+     */
+    public <T> Flux<T> flux(Supplier<? extends Publisher<T>> task) {
+        return Flux.deferContextual(context -> {
+                    var sqlStats = SqlStats.from(context);
+                    return Flux.using(
+                            this::acquire,
+                            permit -> SqlStats.bind(sqlStats, Flux.defer(task)),
+                            this::release
+                    );
+                })
+                .subscribeOn(scheduler)
+                .cancelOn(scheduler);
+    }
+
+    private boolean acquire() throws InterruptedException {
+        if (permits == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        permits.acquire();
+        permitWait.record(Duration.ofNanos(System.nanoTime() - start));
+        return true;
+    }
+
+    private void release(boolean acquired) {
+        if (acquired) {
+            permits.release();
+        }
+    }
+
+    private static RecordingStream recordPinnedEvents(Duration threshold, MeterRegistry meterRegistry) {
+        var pinned = Timer.builder("gocards.blocking.virtual-thread.pinned")
+                .description("Virtual threads pinned to their carrier for longer than the threshold")
+                .register(meterRegistry);
+
+        var stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold);
+        stream.onEvent("jdk.VirtualThreadPinned", event -> pinned.record(event.getDuration()));
+        stream.startAsync();
+        return stream;
+    }
+
+    @Override
+    public void destroy() {
+        if (pinnedEvents != null) {
+            pinnedEvents.close();
+        }
+        if (permits != null) {
+            scheduler.dispose();
+        }
+    }
+}
@@ -5,44 +5,211 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import pl.gocards.api.controller.model.CardChangesResponse;
+import pl.gocards.api.controller.model.ImportProgressResponse;
+import pl.gocards.api.controller.model.PatchCardsRequest;
 import pl.gocards.api.controller.model.UpdateCardRequest;
 import pl.gocards.api.controller.model.UpdateCardResponse;
 import pl.gocards.api.entity.Card;
+import pl.gocards.api.config.BlockingExecutor;
+import pl.gocards.api.config.SmileCodecConfiguration;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.*;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/deck/{deckId}/cards")
 public class CardController {
 
+    public static final String NEXT_PAGE_TOKEN = "Next-Page-Token";
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    private static final List<MediaType> CARDS_MEDIA_TYPES = List.of(
+            MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_NDJSON,
+            SmileCodecConfiguration.APPLICATION_SMILE,
+            SmileCodecConfiguration.APPLICATION_STREAM_SMILE
+    );
+
     private final CardControllerFacade cardController;
 
+    private final BlockingExecutor blockingExecutor;
+
+    private final int importChunkSize;
+
     public CardController(
-            CardControllerFacade cardController
+            CardControllerFacade cardController,
+            BlockingExecutor blockingExecutor,
+            @Value("${gocards.import.chunk-size:1000}") int importChunkSize
     ) {
         this.cardController = cardController;
+        this.blockingExecutor = blockingExecutor;
+        this.importChunkSize = importChunkSize;
     }
 
-    @GetMapping
+    /**
+     * Answers {@code If-None-Match} with 304 after reading only the deck; the cards are read and serialized
+     * only when the body is written.
+     * <p>
+     * With {@code Accept: application/x-ndjson} the cards are streamed one JSON object per line straight from a
+     * database cursor, with backpressure, so memory use does not grow with the deck size; likewise one Smile
+     * object at a time with {@code Accept: application/stream+x-jackson-smile}. The representation is selected
+     * before the response is built, and each one has its own ETag.
+     * <p>
+     * With {@code pageSize} or {@code pageToken} only one page of cards is read and returned; the
+     * {@value #NEXT_PAGE_TOKEN} response header carries the {@code pageToken} of the next page, if any.
+     */
+    @GetMapping(produces = {
+            MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_NDJSON_VALUE,
+            SmileCodecConfiguration.APPLICATION_SMILE_VALUE,
+            SmileCodecConfiguration.APPLICATION_STREAM_SMILE_VALUE
+    })
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", content = {@Content(array = @ArraySchema(schema = @Schema(implementation = Card.class)))}),
+            @ApiResponse(responseCode = "304", content = {@Content(schema = @Schema(nullable = true))}),
+            @ApiResponse(responseCode = "400", content = {@Content(schema = @Schema(nullable = true))}),
             @ApiResponse(responseCode = "404", content = {@Content(schema = @Schema(nullable = true))})
     })
-    public Flux<Card> fetchCards(@PathVariable String deckId) {
-        return cardController.fetchCards(deckId);
+    public Mono<ResponseEntity<Flux<Card>>> fetchCards(
+            @PathVariable String deckId,
+            @RequestParam(required = false) Integer pageSize,
+            @RequestParam(required = false) String pageToken,
+            @RequestHeader HttpHeaders headers
+    ) {
+        var contentType = ContentNegotiation.select(headers.getAccept(), CARDS_MEDIA_TYPES);
+        if (pageSize != null || pageToken != null) {
+            return blockingExecutor.mono(() -> cardController.fetchPage(deckId, pageSize, pageToken, contentType));
+        }
+
+        var streaming = contentType.equals(MediaType.APPLICATION_NDJSON)
+                || contentType.equals(SmileCodecConfiguration.APPLICATION_STREAM_SMILE);
+
+        // Cards that are not streamed hold a permit only while they are read, not while a slow client reads them.
+        return blockingExecutor.mono(() -> cardController.findDeck(deckId))
+                .map(deck -> ResponseEntity.ok()
+                        .contentType(contentType)
+                        .eTag(DeckETag.of(deck, contentType))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .body(streaming
+                                ? blockingExecutor.flux(() -> cardController.streamCards(deck))
+                                : blockingExecutor.mono(() -> cardController.fetchCards(deck))
+                                        .flatMapIterable(Function.identity())));
     }
 
-    @PutMapping
+    /**
+     * Returns the cards created, changed or deleted since the cursor of the previous call.
+     * Without {@code since}, returns all cards.
+     */
+    @GetMapping("/changes")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", content = {@Content(array = @ArraySchema(schema = @Schema(implementation = UpdateCardResponse.class)))}),
+            @ApiResponse(responseCode = "200", content = {@Content(schema = @Schema(implementation = CardChangesResponse.class))}),
             @ApiResponse(responseCode = "404", content = {@Content(schema = @Schema(nullable = true))})
     })
-    public Flux<UpdateCardResponse> updateCards(
+    public Mono<CardChangesResponse> fetchChanges(
             @PathVariable String deckId,
+            @RequestParam(required = false) Long since
+    ) {
+        return blockingExecutor.mono(() -> cardController.fetchChanges(deckId, since));
+    }
+
+    /**
+     * With {@code If-Match} (the ETag of a previous read) or {@code baseVersion}, the cards replace the deck only
+     * if it has not changed since that version; otherwise 409 is returned and the client has to merge. Without
+     * them, concurrent writes are rebased on and the last one wins.
+     * <p>
+     * The returned ETag is the one {@code GET} returns for the same representation of the cards.
+     */
+    @PutMapping(produces = {
+            MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_NDJSON_VALUE,
+            SmileCodecConfiguration.APPLICATION_SMILE_VALUE,
+            SmileCodecConfiguration.APPLICATION_STREAM_SMILE_VALUE
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = {@Content(array = @ArraySchema(schema = @Schema(implementation = UpdateCardResponse.class)))}),
+            @ApiResponse(responseCode = "404", content = {@Content(schema = @Schema(nullable = true))}),
+            @ApiResponse(responseCode = "409", content = {@Content(schema = @Schema(nullable = true))})
+    })
+    public Mono<ResponseEntity<Flux<UpdateCardResponse>>> updateCards(
+            @PathVariable String deckId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(required = false) Integer baseVersion,
+            @RequestHeader HttpHeaders headers,
             @RequestBody List<UpdateCardRequest> cards
     ) {
-        return cardController.updateCards(deckId, cards);
+        var contentType = ContentNegotiation.select(headers.getAccept(), CARDS_MEDIA_TYPES);
+        return Mono.defer(() -> cardController.updateCards(
+                deckId,
+                cards,
+                baseVersion != null ? baseVersion : DeckETag.version(deckId, ifMatch),
+                contentType
+        ));
+    }
+
+    /**
+     * Applies only the listed changes and returns only the cards that were written.
+     */
+    @PatchMapping
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = {@Content(array = @ArraySchema(schema = @Schema(implementation = UpdateCardResponse.class)))}),
+            @ApiResponse(responseCode = "404", content = {@Content(schema = @Schema(nullable = true))})
+    })
+    public Flux<UpdateCardResponse> patchCards(
+            @PathVariable String deckId,
+            @RequestBody PatchCardsRequest request
+    ) {
+        return blockingExecutor.flux(() -> cardController.patchCards(deckId, request));
+    }
+
+    /**
+     * Appends the cards to the end of the deck without holding the whole import in memory: the body is parsed
+     * as it arrives and committed in chunks of {@code gocards.import.chunk-size} cards, one transaction each.
+     * A progress event is streamed back after every chunk; if the import fails, the chunks reported so far
+     * stay committed.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = {@Content(schema = @Schema(implementation = ImportProgressResponse.class))}),
+            @ApiResponse(responseCode = "404", content = {@Content(schema = @Schema(nullable = true))})
+    })
+    public Flux<ImportProgressResponse> importCards(
+            @PathVariable String deckId,
+            @RequestBody Flux<UpdateCardRequest> cards
+    ) {
+        return importInChunks(deckId, cards);
+    }
+
+    /**
+     * Like {@link #importCards(String, Flux)}, for {@code term,definition} CSV lines.
+     */
+    @PostMapping(value = "/import", consumes = TEXT_CSV_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = {@Content(schema = @Schema(implementation = ImportProgressResponse.class))}),
+            @ApiResponse(responseCode = "400", content = {@Content(schema = @Schema(nullable = true))}),
+            @ApiResponse(responseCode = "404", content = {@Content(schema = @Schema(nullable = true))})
+    })
+    public Flux<ImportProgressResponse> importCsvCards(
+            @PathVariable String deckId,
+            @RequestBody Flux<String> lines
+    ) {
+        return importInChunks(deckId, CsvCardParser.parse(lines));
+    }
+
+    private Flux<ImportProgressResponse> importInChunks(String deckId, Flux<UpdateCardRequest> cards) {
+        return blockingExecutor.mono(() -> cardController.findDeck(deckId))
+                .thenMany(cards.buffer(importChunkSize))
+                .concatMap(chunk -> blockingExecutor.mono(() -> cardController.importCards(deckId, chunk)), 1)
+                .scan(0L, (imported, chunk) -> imported + chunk)
+                .skip(1)
+                .map(ImportProgressResponse::new);
     }
 }
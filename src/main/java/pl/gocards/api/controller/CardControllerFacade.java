@@ -1,70 +1,166 @@
 package pl.gocards.api.controller;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import pl.gocards.api.controller.model.CardChangesResponse;
+import pl.gocards.api.controller.model.PatchCardsRequest;
 import pl.gocards.api.controller.model.UpdateCardRequest;
 import pl.gocards.api.controller.model.UpdateCardResponse;
 import pl.gocards.api.entity.Card;
-import pl.gocards.api.exception.CardNotFoundException;
+import pl.gocards.api.entity.Deck;
 import pl.gocards.api.exception.DeckNotFoundException;
 import pl.gocards.api.jooq.CardRepository;
-import pl.gocards.api.jooq.DeckRepository;
 import pl.gocards.api.service.CardService;
+import pl.gocards.api.service.DeckCache;
+import pl.gocards.api.service.DeckWriteCoalescer;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class CardControllerFacade {
 
-    private final DeckRepository deckRepository;
+    private final DeckCache deckCache;
 
     private final CardRepository cardRepository;
 
     private final CardService cardService;
 
+    private final DeckWriteCoalescer deckWriteCoalescer;
+
+    private final int streamFetchSize;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
     public CardControllerFacade(
-            DeckRepository deckRepository,
+            DeckCache deckCache,
             CardRepository cardRepository,
-            CardService cardService
+            CardService cardService,
+            DeckWriteCoalescer deckWriteCoalescer,
+            @Value("${gocards.cards.stream-fetch-size:1000}") int streamFetchSize,
+            @Value("${gocards.cards.page-size:100}") int defaultPageSize,
+            @Value("${gocards.cards.max-page-size:1000}") int maxPageSize
     ) {
-        this.deckRepository = deckRepository;
+        this.deckCache = deckCache;
         this.cardRepository = cardRepository;
         this.cardService = cardService;
+        this.deckWriteCoalescer = deckWriteCoalescer;
+        this.streamFetchSize = streamFetchSize;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
-    public Flux<Card> fetchCards(String deckId) {
-        validateDeckExists(deckId);
-        return Flux.fromStream(cardRepository.findByDeck(deckId));
+    public Deck findDeck(String deckId) {
+        var deck = deckCache.find(deckId);
+        if (deck == null) {
+            throw new DeckNotFoundException(deckId);
+        }
+        return deck;
     }
 
-    public Flux<UpdateCardResponse> updateCards(String deckId, List<UpdateCardRequest> cards) {
-        validateDeckExists(deckId);
-        validateCardIdsExist(deckId, cards);
-
-        Map<String, String> cardIdMapToClientId = new HashMap<>();
-        cardService.update(deckId, UpdateCardRequest.toDomain(cards, cardIdMapToClientId));
+    public List<Card> fetchCards(Deck deck) {
+        return deckCache.findCards(deck);
+    }
 
-        return Flux.fromStream(cardRepository.findByDeck(deckId))
-                .map(it -> UpdateCardResponse.fromDomain(it, cardIdMapToClientId));
+    /**
+     * Bypasses the cache: the cards are read from a cursor as the client consumes them,
+     * and the cursor is closed when the response completes or is cancelled.
+     */
+    public Flux<Card> streamCards(Deck deck) {
+        return Flux.fromStream(() -> cardRepository.streamByDeck(deck.id(), streamFetchSize));
     }
 
-    private void validateDeckExists(String deckId) {
-        if (deckRepository.find(deckId) == null) {
-            throw new DeckNotFoundException(deckId);
+    /**
+     * The deck is read before the page, so the ETag is never newer than the cards it is sent with.
+     *
+     * @param pageSize cards per page, {@code gocards.cards.page-size} if {@code null};
+     *                 at most {@code gocards.cards.max-page-size}
+     * @return the page, with the token of the next page in {@link CardController#NEXT_PAGE_TOKEN}
+     * unless it is the last one
+     */
+    public ResponseEntity<Flux<Card>> fetchPage(
+            String deckId,
+            Integer pageSize,
+            String pageToken,
+            MediaType contentType
+    ) {
+        var after = CardPageToken.parse(pageToken);
+        var deck = findDeck(deckId);
+        var limit = pageSize == null ? defaultPageSize : Math.clamp(pageSize, 1, maxPageSize);
+
+        // One card more than the page tells whether another page follows.
+        var cards = cardRepository.findPage(
+                deckId,
+                after == null ? null : after.ordinal(),
+                after == null ? null : after.id(),
+                limit + 1
+        );
+
+        var response = ResponseEntity.ok()
+                .contentType(contentType)
+                .eTag(DeckETag.of(deck, contentType))
+                .varyBy(HttpHeaders.ACCEPT);
+        if (cards.size() > limit) {
+            cards = cards.subList(0, limit);
+            response.header(CardController.NEXT_PAGE_TOKEN, CardPageToken.of(cards.getLast()));
         }
+        return response.body(Flux.fromIterable(cards));
     }
 
-    private void validateCardIdsExist(String deckId, List<UpdateCardRequest> updateCardRequests) {
-        Set<String> existingCardIds = cardRepository.findIdsByDeck(deckId);
+    public CardChangesResponse fetchChanges(String deckId, Long since) {
+        var changes = cardService.changes(deckId, CardChangesResponse.fromCursor(since));
+        return CardChangesResponse.fromDomain(changes);
+    }
 
-        List<String> invalidCardIds = updateCardRequests.stream()
+    /**
+     * @param baseVersion the deck version the cards are based on, or {@code null} to rebase on concurrent writes;
+     *                    only writes without it are queued by {@link DeckWriteCoalescer}
+     */
+    public Mono<ResponseEntity<Flux<UpdateCardResponse>>> updateCards(
+            String deckId,
+            List<UpdateCardRequest> cards,
+            Integer baseVersion,
+            MediaType contentType
+    ) {
+        Set<String> expectedCardIds = cards.stream()
                 .map(UpdateCardRequest::id)
                 .filter(Objects::nonNull)
-                .filter(cardId -> !existingCardIds.contains(cardId))
+                .collect(Collectors.toSet());
+
+        Map<String, String> cardIdMapToClientId = new HashMap<>();
+        var domainCards = UpdateCardRequest.toDomain(cards, cardIdMapToClientId);
+
+        return deckWriteCoalescer.update(deckId, domainCards, expectedCardIds, baseVersion)
+                .map(snapshot -> ResponseEntity.ok()
+                        .contentType(contentType)
+                        .eTag(DeckETag.of(snapshot.deck(), contentType))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .body(Flux.fromIterable(snapshot.cards())
+                                .map(it -> UpdateCardResponse.fromDomain(it, cardIdMapToClientId))));
+    }
+
+    /**
+     * @return the number of cards imported
+     */
+    public int importCards(String deckId, List<UpdateCardRequest> cards) {
+        var created = cards.stream()
+                .map(it -> new Card(UUID.randomUUID().toString(), null, it.front(), it.back(), null, null))
                 .toList();
+        return cardService.append(deckId, created);
+    }
 
-        if (!invalidCardIds.isEmpty()) {
-            throw new CardNotFoundException("The following card IDs were not found: " + invalidCardIds);
-        }
+    public Flux<UpdateCardResponse> patchCards(String deckId, PatchCardsRequest request) {
+        Map<String, String> cardIdMapToClientId = new HashMap<>();
+        var changedCards = cardService.patch(deckId, PatchCardsRequest.toDomain(request, cardIdMapToClientId));
+
+        return Flux.fromIterable(changedCards)
+                .map(it -> UpdateCardResponse.fromDomain(it, cardIdMapToClientId));
     }
 }
@@ -0,0 +1,45 @@
+package pl.gocards.api.controller;
+
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.exception.InvalidPageTokenException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token of a card page: the (ordinal, id) of the last card of the page, which the next page
+ * starts after. Sparse ordinals keep the position valid across most writes to the deck.
+ */
+record CardPageToken(
+        int ordinal,
+        String id
+) {
+
+    static String of(Card lastCard) {
+        var position = lastCard.ordinal() + ":" + lastCard.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the position, or {@code null} for the first page
+     * @throws InvalidPageTokenException if the token was not issued by {@link #of(Card)}
+     */
+    static CardPageToken parse(String pageToken) {
+        if (pageToken == null || pageToken.isEmpty()) {
+            return null;
+        }
+        try {
+            var position = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+            var separator = position.indexOf(':');
+            if (separator < 0) {
+                throw new InvalidPageTokenException(pageToken);
+            }
+            return new CardPageToken(
+                    Integer.parseInt(position.substring(0, separator)),
+                    position.substring(separator + 1)
+            );
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPageTokenException(pageToken);
+        }
+    }
+}
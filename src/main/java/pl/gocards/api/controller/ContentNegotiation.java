@@ -0,0 +1,41 @@
+package pl.gocards.api.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.server.NotAcceptableStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the representation of a response from the {@code Accept} header like WebFlux does, but before the
+ * response is built, so that its ETag can name the representation. The selected type has to be set as the
+ * {@code Content-Type} of the response; WebFlux then writes exactly that type instead of negotiating again.
+ */
+final class ContentNegotiation {
+
+    private ContentNegotiation() {
+    }
+
+    /**
+     * @param producible the types the endpoint can write, the default first
+     * @return the producible type the client prefers; the default if it accepts any of them equally
+     * @throws NotAcceptableStatusException if the client accepts none of them
+     */
+    static MediaType select(List<MediaType> accept, List<MediaType> producible) {
+        List<MediaType> acceptable = new ArrayList<>(accept.isEmpty() ? List.of(MediaType.ALL) : accept);
+        MimeTypeUtils.sortBySpecificity(acceptable);
+
+        for (MediaType accepted : acceptable) {
+            if (accepted.getQualityValue() == 0) {
+                continue;
+            }
+            for (MediaType type : producible) {
+                if (accepted.isCompatibleWith(type)) {
+                    return type;
+                }
+            }
+        }
+        throw new NotAcceptableStatusException(producible);
+    }
+}
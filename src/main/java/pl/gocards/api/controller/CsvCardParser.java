@@ -0,0 +1,78 @@
+package pl.gocards.api.controller;
+
+import pl.gocards.api.controller.model.UpdateCardRequest;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses {@code term,definition} CSV lines as they arrive. Fields may be quoted, with {@code ""} for a quote,
+ * but a quoted field cannot span lines. A first line of {@code term,definition} is treated as a header.
+ */
+final class CsvCardParser {
+
+    private static final String HEADER = "term,definition";
+
+    private CsvCardParser() {
+    }
+
+    static Flux<UpdateCardRequest> parse(Flux<String> lines) {
+        return lines.index()
+                .filter(line -> !line.getT2().isBlank())
+                .filter(line -> line.getT1() > 0 || !HEADER.equalsIgnoreCase(line.getT2().strip()))
+                .map(line -> parseLine(line.getT2()));
+    }
+
+    static UpdateCardRequest parseLine(String line) {
+        var fields = split(line);
+        if (fields.size() > 2) {
+            throw new ServerWebInputException("Expected at most 2 CSV fields, got " + fields.size() + ": " + line);
+        }
+        return new UpdateCardRequest(
+                null,
+                null,
+                new CardFront(emptyToNull(fields.get(0))),
+                new CardBack(fields.size() > 1 ? emptyToNull(fields.get(1)) : null)
+        );
+    }
+
+    private static List<String> split(String line) {
+        var fields = new ArrayList<String>(2);
+        var field = new StringBuilder();
+        var quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new ServerWebInputException("Unterminated quoted CSV field: " + line);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
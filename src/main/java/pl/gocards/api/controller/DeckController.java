@@ -6,41 +6,68 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import pl.gocards.api.config.BlockingExecutor;
+import pl.gocards.api.config.SmileCodecConfiguration;
 import pl.gocards.api.controller.model.DeckRequest;
 import pl.gocards.api.controller.model.DeckResponse;
+import pl.gocards.api.controller.model.SyncDeckRequest;
+import pl.gocards.api.controller.model.SyncDeckResponse;
 import pl.gocards.api.entity.Card;
 import pl.gocards.api.entity.Deck;
 import pl.gocards.api.exception.DeckNotFoundException;
 import pl.gocards.api.jooq.DeckRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
 public class DeckController {
 
+    private static final List<MediaType> DECK_MEDIA_TYPES = List.of(
+            MediaType.APPLICATION_JSON,
+            SmileCodecConfiguration.APPLICATION_SMILE
+    );
+
     private final DeckControllerFacade deckController;
 
-    public DeckController(DeckControllerFacade deckController) {
+    private final BlockingExecutor blockingExecutor;
+
+    public DeckController(
+            DeckControllerFacade deckController,
+            BlockingExecutor blockingExecutor
+    ) {
         this.deckController = deckController;
+        this.blockingExecutor = blockingExecutor;
     }
 
-    @GetMapping("/deck/{id}")
+    @GetMapping(value = "/deck/{id}", produces = {
+            MediaType.APPLICATION_JSON_VALUE,
+            SmileCodecConfiguration.APPLICATION_SMILE_VALUE
+    })
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", content = {@Content(schema = @Schema(implementation = DeckResponse.class))}),
+            @ApiResponse(responseCode = "304", content = {@Content(schema = @Schema(nullable = true))}),
             @ApiResponse(responseCode = "404", content = {@Content(schema = @Schema(nullable = true))})
     })
     public Mono<ResponseEntity<DeckResponse>> find(
-            @PathVariable String id
+            @PathVariable String id,
+            @RequestHeader HttpHeaders headers
     ) {
-        return Mono.fromCallable(() -> deckController.find(id))
-                .subscribeOn(Schedulers.boundedElastic())
-                .flatMap(deck -> wrapResponse(deck, HttpStatus.OK));
+        var contentType = ContentNegotiation.select(headers.getAccept(), DECK_MEDIA_TYPES);
+        return blockingExecutor.mono(() -> deckController.find(id))
+                .map(deck -> ResponseEntity.ok()
+                        .contentType(contentType)
+                        .eTag(DeckETag.of(deck, contentType))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .body(DeckResponse.fromDomain(deck)));
     }
 
     @PostMapping("/deck")
@@ -52,8 +79,7 @@ public class DeckController {
     public Mono<ResponseEntity<DeckResponse>> create(
             @RequestBody @Valid DeckRequest request
     ) throws DeckNotFoundException {
-        return Mono.fromCallable(() -> deckController.createDeck(request))
-                .subscribeOn(Schedulers.boundedElastic())
+        return blockingExecutor.mono(() -> deckController.createDeck(request))
                 .flatMap(updated -> wrapResponse(updated, HttpStatus.CREATED));
     }
 
@@ -66,11 +92,30 @@ public class DeckController {
             @PathVariable String id,
             @RequestBody @Valid DeckRequest request
     ) {
-        return Mono.fromCallable(() -> deckController.updateDeck(id, request))
-                .subscribeOn(Schedulers.boundedElastic())
+        return blockingExecutor.mono(() -> deckController.updateDeck(id, request))
                 .flatMap(updated -> wrapResponse(updated, HttpStatus.OK));
     }
 
+    /**
+     * Syncs many decks in one request: sends each deck and all its cards only if the client's version or ETag of
+     * it is stale, with two queries in total. With {@code Accept: application/x-ndjson} each deck is written as
+     * one line as soon as it is serialized.
+     */
+    @PostMapping(value = "/deck/sync", produces = {
+            MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_NDJSON_VALUE,
+            SmileCodecConfiguration.APPLICATION_SMILE_VALUE,
+            SmileCodecConfiguration.APPLICATION_STREAM_SMILE_VALUE
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = {@Content(array = @ArraySchema(schema = @Schema(implementation = SyncDeckResponse.class)))})
+    })
+    public Flux<SyncDeckResponse> sync(
+            @RequestBody List<SyncDeckRequest> decks
+    ) {
+        return blockingExecutor.flux(() -> deckController.syncDecks(decks));
+    }
+
     private Mono<ResponseEntity<DeckResponse>> wrapResponse(Deck updated, HttpStatus status) {
         return wrapResponse(DeckResponse.fromDomain(updated), status);
     }
@@ -2,23 +2,45 @@ package pl.gocards.api.controller;
 
 import org.springframework.stereotype.Service;
 import pl.gocards.api.controller.model.DeckRequest;
+import pl.gocards.api.controller.model.DeckResponse;
+import pl.gocards.api.controller.model.SyncDeckRequest;
+import pl.gocards.api.controller.model.SyncDeckResponse;
+import pl.gocards.api.entity.Card;
 import pl.gocards.api.entity.Deck;
 import pl.gocards.api.jooq.DeckRepository;
+import pl.gocards.api.service.CardService;
+import pl.gocards.api.service.DeckCache;
+import reactor.core.publisher.Flux;
 
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class DeckControllerFacade {
 
     private final DeckRepository deckRepository;
 
-    public DeckControllerFacade(DeckRepository deckRepository) {
+    private final DeckCache deckCache;
+
+    private final CardService cardService;
+
+    public DeckControllerFacade(
+            DeckRepository deckRepository,
+            DeckCache deckCache,
+            CardService cardService
+    ) {
         this.deckRepository = deckRepository;
+        this.deckCache = deckCache;
+        this.cardService = cardService;
     }
 
     public Deck find(String deckId) {
-        return deckRepository.find(deckId);
+        return deckCache.find(deckId);
     }
 
     public Deck createDeck(DeckRequest request) {
@@ -32,7 +54,47 @@ public class DeckControllerFacade {
 
     public Deck updateDeck(String id, DeckRequest request) {
         var deck = DeckRequest.toDomain(id, request);
-        deckRepository.update(deck, LocalDateTime.now());
-        return deckRepository.find(id);
+        return cardService.rename(id, deck.name());
+    }
+
+    /**
+     * @return one response per requested deck, in request order; a deck requested twice is returned once
+     */
+    public Flux<SyncDeckResponse> syncDecks(List<SyncDeckRequest> requests) {
+        Map<String, Integer> knownVersions = new LinkedHashMap<>();
+        requests.forEach(it -> knownVersions.put(
+                it.id(),
+                it.version() != null ? it.version() : DeckETag.parse(it.id(), it.eTag())
+        ));
+
+        var sync = cardService.sync(knownVersions);
+        Map<String, Deck> decks = sync.decks().stream()
+                .collect(Collectors.toMap(Deck::id, Function.identity()));
+
+        return Flux.fromIterable(knownVersions.keySet())
+                .map(deckId -> toSyncResponse(deckId, decks.get(deckId), sync.cards().get(deckId)));
+    }
+
+    private static SyncDeckResponse toSyncResponse(String deckId, Deck deck, List<Card> cards) {
+        if (deck == null) {
+            return SyncDeckResponse.builder()
+                    .id(deckId)
+                    .status(SyncDeckResponse.Status.NOT_FOUND)
+                    .build();
+        } else if (cards == null) {
+            return SyncDeckResponse.builder()
+                    .id(deckId)
+                    .status(SyncDeckResponse.Status.NOT_MODIFIED)
+                    .eTag(DeckETag.of(deck))
+                    .build();
+        } else {
+            return SyncDeckResponse.builder()
+                    .id(deckId)
+                    .status(SyncDeckResponse.Status.OK)
+                    .eTag(DeckETag.of(deck))
+                    .deck(DeckResponse.fromDomain(deck))
+                    .cards(cards)
+                    .build();
+        }
     }
 }
@@ -0,0 +1,81 @@
+package pl.gocards.api.controller;
+
+import org.springframework.http.MediaType;
+import pl.gocards.api.config.SmileCodecConfiguration;
+import pl.gocards.api.entity.Deck;
+import pl.gocards.api.exception.DeckVersionConflictException;
+
+/**
+ * Strong ETag shared by a deck and its cards. Every change to either bumps {@code deck.version},
+ * so the ETag changes exactly when one of the representations does.
+ * <p>
+ * A strong ETag identifies exact bytes, so representations other than JSON get a suffix;
+ * the version is read back from any of them.
+ */
+final class DeckETag {
+
+    private DeckETag() {
+    }
+
+    static String of(Deck deck) {
+        return of(deck, MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * @param contentType the type of the representation, selected by {@link ContentNegotiation}
+     */
+    static String of(Deck deck, MediaType contentType) {
+        return "\"" + deck.id() + "-" + deck.version() + suffix(contentType) + "\"";
+    }
+
+    private static String suffix(MediaType contentType) {
+        if (contentType.equalsTypeAndSubtype(MediaType.APPLICATION_JSON)) {
+            return "";
+        } else if (contentType.equalsTypeAndSubtype(MediaType.APPLICATION_NDJSON)) {
+            return "-ndjson";
+        } else if (contentType.equalsTypeAndSubtype(SmileCodecConfiguration.APPLICATION_SMILE)) {
+            return "-smile";
+        } else if (contentType.equalsTypeAndSubtype(SmileCodecConfiguration.APPLICATION_STREAM_SMILE)) {
+            return "-smile-stream";
+        } else {
+            return "-" + contentType.getSubtype();
+        }
+    }
+
+    /**
+     * @param ifMatch the {@code If-Match} header sent with a write
+     * @return the deck version the ETag was issued for, or {@code null} if the header is absent or {@code *}
+     * @throws DeckVersionConflictException if the ETag was not issued for this deck
+     */
+    static Integer version(String deckId, String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        var version = parse(deckId, ifMatch);
+        if (version == null) {
+            throw new DeckVersionConflictException(deckId);
+        }
+        return version;
+    }
+
+    /**
+     * @return the deck version the ETag was issued for, or {@code null} if it was not issued for this deck
+     */
+    static Integer parse(String deckId, String eTag) {
+        if (eTag == null) {
+            return null;
+        }
+        var prefix = "\"" + deckId + "-";
+        var value = eTag.trim();
+        if (!value.startsWith(prefix) || !value.endsWith("\"") || value.length() <= prefix.length() + 1) {
+            return null;
+        }
+        var version = value.substring(prefix.length(), value.length() - 1);
+        var suffix = version.indexOf('-');
+        try {
+            return Integer.valueOf(suffix < 0 ? version : version.substring(0, suffix));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
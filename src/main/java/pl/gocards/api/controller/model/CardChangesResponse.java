@@ -0,0 +1,40 @@
+package pl.gocards.api.controller.model;
+
+import lombok.Builder;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardChanges;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * @param cursor the value to send as {@code since} on the next sync
+ */
+@Builder
+public record CardChangesResponse(
+        long cursor,
+        List<Card> upserts,
+        List<String> deletions
+) {
+
+    public static CardChangesResponse fromDomain(CardChanges changes) {
+        return new CardChangesResponse(
+                toCursor(changes.cursor()),
+                changes.upserts(),
+                changes.deletions()
+        );
+    }
+
+    /**
+     * The cursor is the deck's {@code updated_at} in microseconds since the epoch, the precision it is stored with.
+     */
+    public static Timestamp fromCursor(Long cursor) {
+        return cursor == null ? null : Timestamp.from(Instant.EPOCH.plus(cursor, ChronoUnit.MICROS));
+    }
+
+    private static long toCursor(Timestamp timestamp) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, timestamp.toInstant());
+    }
+}
@@ -18,6 +18,7 @@ public record DeckRequest(
                 deckId,
                 deck.name(),
                 null,
+                null,
                 null
         );
     }
@@ -8,7 +8,8 @@ public record DeckResponse(
         String id,
         String name,
         Timestamp createdAt,
-        Timestamp updatedAt
+        Timestamp updatedAt,
+        Integer version
 ) {
 
     public static DeckResponse fromDomain(
@@ -18,7 +19,8 @@ public record DeckResponse(
                 deck.id(),
                 deck.name(),
                 deck.createdAt(),
-                deck.updatedAt()
+                deck.updatedAt(),
+                deck.version()
         );
     }
 
@@ -0,0 +1,14 @@
+package pl.gocards.api.controller.model;
+
+import lombok.Builder;
+
+/**
+ * Sent after each committed chunk of an import.
+ *
+ * @param imported the number of cards committed so far
+ */
+@Builder
+public record ImportProgressResponse(
+        long imported
+) {
+}
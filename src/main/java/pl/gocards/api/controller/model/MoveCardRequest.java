@@ -0,0 +1,14 @@
+package pl.gocards.api.controller.model;
+
+import lombok.Builder;
+
+/**
+ * @param id      ID of the card to move, or the {@code clientId} of a card created in the same request.
+ * @param afterId ID of the card to place it after; {@code null} moves it to the top of the deck.
+ */
+@Builder
+public record MoveCardRequest(
+        String id,
+        String afterId
+) {
+}
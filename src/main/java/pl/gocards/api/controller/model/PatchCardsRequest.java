@@ -0,0 +1,59 @@
+package pl.gocards.api.controller.model;
+
+import lombok.Builder;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardMove;
+import pl.gocards.api.entity.CardPatch;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Builder
+public record PatchCardsRequest(
+        List<UpdateCardRequest> upsert,
+        List<String> delete,
+        List<MoveCardRequest> move
+) {
+
+    public static CardPatch toDomain(
+            PatchCardsRequest request,
+            Map<String, String> cardIdMapToClientId
+    ) {
+        Map<String, String> clientIdMapToCardId = new HashMap<>();
+
+        List<Card> creations = new ArrayList<>();
+        List<Card> updates = new ArrayList<>();
+
+        orEmpty(request.upsert()).forEach(it -> {
+            var cardId = it.id() == null ? UUID.randomUUID().toString() : it.id();
+            cardIdMapToClientId.put(cardId, it.clientId());
+
+            var card = new Card(cardId, null, it.front(), it.back(), null, null);
+            if (it.id() == null) {
+                creations.add(card);
+                if (it.clientId() != null) {
+                    clientIdMapToCardId.put(it.clientId(), cardId);
+                }
+            } else {
+                updates.add(card);
+            }
+        });
+
+        List<CardMove> moves = orEmpty(request.move()).stream()
+                .map(it -> new CardMove(
+                        clientIdMapToCardId.getOrDefault(it.id(), it.id()),
+                        it.afterId() == null ? null : clientIdMapToCardId.getOrDefault(it.afterId(), it.afterId())
+                ))
+                .toList();
+
+        Set<String> deletions = orEmpty(request.delete()).stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+
+        return new CardPatch(creations, updates, deletions, moves);
+    }
+
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list == null ? List.of() : list;
+    }
+}
@@ -0,0 +1,16 @@
+package pl.gocards.api.controller.model;
+
+import lombok.Builder;
+
+/**
+ * @param id      ID of the deck to sync.
+ * @param version version of the deck the client has; {@code null} if it has none.
+ * @param eTag    ETag of the deck the client has, used when {@code version} is not sent.
+ */
+@Builder
+public record SyncDeckRequest(
+        String id,
+        Integer version,
+        String eTag
+) {
+}
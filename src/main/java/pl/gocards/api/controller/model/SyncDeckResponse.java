@@ -0,0 +1,28 @@
+package pl.gocards.api.controller.model;
+
+import lombok.Builder;
+import pl.gocards.api.entity.Card;
+
+import java.util.List;
+
+/**
+ * @param eTag  ETag of the deck, to send back on the next sync or as {@code If-Match} with a write;
+ *              {@code null} if the deck was not found.
+ * @param deck  the deck, only with {@link Status#OK}.
+ * @param cards all cards of the deck ordered by ordinal, only with {@link Status#OK}.
+ */
+@Builder
+public record SyncDeckResponse(
+        String id,
+        Status status,
+        String eTag,
+        DeckResponse deck,
+        List<Card> cards
+) {
+
+    public enum Status {
+        OK,
+        NOT_MODIFIED,
+        NOT_FOUND
+    }
+}
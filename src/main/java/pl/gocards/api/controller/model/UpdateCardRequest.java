@@ -8,7 +8,6 @@ import pl.gocards.api.entity.CardFront;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
 
 @Builder
 public record UpdateCardRequest(
@@ -18,25 +17,27 @@ public record UpdateCardRequest(
         CardBack back
 ) {
 
+    /**
+     * @return the cards in the requested order, without ordinals; the service assigns them when storing the deck
+     */
     public static List<Card> toDomain(
             List<UpdateCardRequest> cards,
             Map<String, String> cardIdMapToClientId
     ) {
-        AtomicInteger ordinal = new AtomicInteger();
         return cards.stream()
                 .map(it -> {
-                    Card card = toDomain(it, ordinal.incrementAndGet());
+                    Card card = toDomain(it);
                     cardIdMapToClientId.put(card.id(), it.clientId());
                     return card;
                 })
                 .toList();
     }
 
-    private static Card toDomain(UpdateCardRequest card, int ordinal) {
+    private static Card toDomain(UpdateCardRequest card) {
         var cardId = card.id == null ? UUID.randomUUID().toString() : card.id;
         return new Card(
                 cardId,
-                ordinal,
+                null,
                 card.front(),
                 card.back(),
                 null,
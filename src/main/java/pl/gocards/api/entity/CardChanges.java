@@ -0,0 +1,18 @@
+package pl.gocards.api.entity;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * The changes of a deck's cards since a cursor.
+ *
+ * @param cursor    {@code updated_at} of the deck as of the read; passing it back returns only later changes
+ * @param upserts   cards created or changed since the cursor, ordered by ordinal
+ * @param deletions IDs of the cards deleted since the cursor
+ */
+public record CardChanges(
+        Timestamp cursor,
+        List<Card> upserts,
+        List<String> deletions
+) {
+}
@@ -0,0 +1,27 @@
+package pl.gocards.api.entity;
+
+import java.util.List;
+
+/**
+ * Difference between the stored cards of a deck and the requested ones.
+ * A card whose content and ordinal both changed is listed in {@code updates} and in {@code moves}.
+ *
+ * @param creations cards that do not exist yet
+ * @param updates   existing cards whose front or back changed
+ * @param moves     existing cards whose ordinal changed
+ * @param deletions IDs of existing cards that are no longer requested
+ */
+public record CardDiff(
+        List<Card> creations,
+        List<Card> updates,
+        List<Card> moves,
+        List<String> deletions
+) {
+    public int size() {
+        return creations.size() + updates.size() + moves.size() + deletions.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
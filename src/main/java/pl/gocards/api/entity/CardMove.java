@@ -0,0 +1,10 @@
+package pl.gocards.api.entity;
+
+/**
+ * Places the card directly after {@code afterCardId}, or at the top of the deck when it is {@code null}.
+ */
+public record CardMove(
+        String cardId,
+        String afterCardId
+) {
+}
@@ -0,0 +1,16 @@
+package pl.gocards.api.entity;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Changes to a deck, applied in order: deletions, updates, creations, then moves.
+ * Created cards are appended to the end of the deck.
+ */
+public record CardPatch(
+        List<Card> creations,
+        List<Card> updates,
+        Set<String> deletions,
+        List<CardMove> moves
+) {
+}
@@ -0,0 +1,15 @@
+package pl.gocards.api.entity;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cards replacing those of a deck, as sent by one client.
+ *
+ * @param expectedCardIds IDs the client sent as existing cards; each of them must belong to the deck
+ */
+public record CardReplacement(
+        List<Card> cards,
+        Set<String> expectedCardIds
+) {
+}
@@ -0,0 +1,13 @@
+package pl.gocards.api.entity;
+
+/**
+ * The outcome of one of several card replacements written in one transaction.
+ *
+ * @param snapshot  the deck as written by the replacement, or {@code null} if it was rejected
+ * @param rejection why the replacement was rejected, or {@code null} if it was written
+ */
+public record CardReplacementResult(
+        DeckSnapshot snapshot,
+        RuntimeException rejection
+) {
+}
@@ -6,9 +6,10 @@ public record Deck(
         String id,
         String name,
         Timestamp createdAt,
-        Timestamp updatedAt
+        Timestamp updatedAt,
+        Integer version
 ) {
     public Deck(String id, String name) {
-        this(id, name, null, null);
+        this(id, name, null, null, null);
     }
 }
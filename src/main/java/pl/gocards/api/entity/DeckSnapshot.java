@@ -0,0 +1,12 @@
+package pl.gocards.api.entity;
+
+import java.util.List;
+
+/**
+ * A deck together with its cards ordered by ordinal, as read (or written) in one transaction.
+ */
+public record DeckSnapshot(
+        Deck deck,
+        List<Card> cards
+) {
+}
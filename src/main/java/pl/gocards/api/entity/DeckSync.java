@@ -0,0 +1,16 @@
+package pl.gocards.api.entity;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decks requested by a batch sync, read from one snapshot.
+ *
+ * @param decks the requested decks that exist
+ * @param cards the cards of every deck whose known version is stale, by deck ID, ordered by ordinal
+ */
+public record DeckSync(
+        List<Deck> decks,
+        Map<String, List<Card>> cards
+) {
+}
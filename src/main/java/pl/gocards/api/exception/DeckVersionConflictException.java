@@ -0,0 +1,13 @@
+package pl.gocards.api.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class DeckVersionConflictException extends RuntimeException {
+
+    public DeckVersionConflictException(String deckId) {
+        super("Deck with ID '" + deckId + "' was modified concurrently.");
+    }
+
+}
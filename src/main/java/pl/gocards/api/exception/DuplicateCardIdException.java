@@ -0,0 +1,13 @@
+package pl.gocards.api.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class DuplicateCardIdException extends RuntimeException {
+
+    public DuplicateCardIdException(String duplicateCardIds) {
+        super("The following card IDs were given more than once: " + duplicateCardIds);
+    }
+
+}
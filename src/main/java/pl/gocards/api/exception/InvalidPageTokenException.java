@@ -0,0 +1,13 @@
+package pl.gocards.api.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidPageTokenException extends RuntimeException {
+
+    public InvalidPageTokenException(String pageToken) {
+        super("Page token '" + pageToken + "' is invalid.");
+    }
+
+}
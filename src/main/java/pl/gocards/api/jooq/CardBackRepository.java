@@ -34,7 +34,9 @@ public class CardBackRepository {
                         }))
                 .collect(Collectors.toList());
 
-        dslContext.batchInsert(creations).execute();
+        if (!creations.isEmpty()) {
+            dslContext.batchInsert(creations).execute();
+        }
     }
 
     public void batchUpdate(List<Map.Entry<String, Map<BackType, String>>> cardBackData) {
@@ -51,7 +53,7 @@ public class CardBackRepository {
         cardBackData.forEach(record -> {
             var cardId = record.getKey();
             var backData = record.getValue();
-            var existingRecords = groupedRecords.get(cardId);
+            var existingRecords = groupedRecords.getOrDefault(cardId, dslContext.newResult(CARD_BACK));
 
             updates.addAll(filterUpdates(existingRecords, backData));
             deletions.addAll(filterDeletions(existingRecords, backData));
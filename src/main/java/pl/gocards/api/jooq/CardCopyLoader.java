@@ -0,0 +1,148 @@
+package pl.gocards.api.jooq;
+
+import org.jooq.DSLContext;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.stereotype.Repository;
+import pl.gocards.api.entity.BackType;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.FrontType;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Creates cards with {@code COPY ... FROM STDIN (FORMAT binary)}, one statement per table.
+ * <p>
+ * The copy runs on the connection of the current Spring transaction, so it commits or rolls back together
+ * with the rest of the write.
+ */
+@Repository
+public class CardCopyLoader {
+
+    private static final String COPY_CARD =
+            "COPY card (id, deck_id, ordinal, term, definition, created_at, updated_at) FROM STDIN (FORMAT binary)";
+    private static final String COPY_CARD_FRONT =
+            "COPY card_front (card_id, name, content) FROM STDIN (FORMAT binary)";
+    private static final String COPY_CARD_BACK =
+            "COPY card_back (card_id, name, content) FROM STDIN (FORMAT binary)";
+
+    private static final byte[] SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final LocalDateTime POSTGRES_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DSLContext dslContext;
+
+    public CardCopyLoader(
+            DSLContext dslContext
+    ) {
+        this.dslContext = dslContext;
+    }
+
+    /**
+     * @param withContentTables whether to copy the content to {@code card_front} and {@code card_back} too,
+     *                          besides the {@code term} and {@code definition} columns of {@code card}
+     */
+    public void copy(String deckId, List<Card> cards, LocalDateTime now, boolean withContentTables) {
+        dslContext.connection(connection -> {
+            var pgConnection = connection.unwrap(PGConnection.class);
+            copyCards(pgConnection, deckId, cards, now);
+            if (withContentTables) {
+                copyFronts(pgConnection, cards);
+                copyBacks(pgConnection, cards);
+            }
+        });
+    }
+
+    private static void copyCards(PGConnection connection, String deckId, List<Card> cards, LocalDateTime now)
+            throws SQLException {
+        var timestamp = micros(now);
+        try (var out = open(connection, COPY_CARD)) {
+            for (Card card : cards) {
+                out.writeShort(7);
+                writeText(out, card.id());
+                writeText(out, deckId);
+                out.writeInt(Integer.BYTES);
+                out.writeInt(card.ordinal());
+                writeText(out, card.front() == null ? null : card.front().term());
+                writeText(out, card.back() == null ? null : card.back().definition());
+                out.writeInt(Long.BYTES);
+                out.writeLong(timestamp);
+                out.writeInt(Long.BYTES);
+                out.writeLong(timestamp);
+            }
+            out.writeShort(-1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void copyFronts(PGConnection connection, List<Card> cards) throws SQLException {
+        try (var out = open(connection, COPY_CARD_FRONT)) {
+            for (Card card : cards) {
+                if (card.front() != null && card.front().term() != null) {
+                    writeContent(out, card.id(), FrontType.term.name(), card.front().term());
+                }
+            }
+            out.writeShort(-1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void copyBacks(PGConnection connection, List<Card> cards) throws SQLException {
+        try (var out = open(connection, COPY_CARD_BACK)) {
+            for (Card card : cards) {
+                if (card.back() != null && card.back().definition() != null) {
+                    writeContent(out, card.id(), BackType.definition.name(), card.back().definition());
+                }
+            }
+            out.writeShort(-1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts the copy and writes the binary header: the signature, no flags and an empty header extension.
+     * Closing the returned stream ends the copy.
+     */
+    private static DataOutputStream open(PGConnection connection, String sql) throws SQLException, IOException {
+        var out = new DataOutputStream(new PGCopyOutputStream(connection, sql, BUFFER_SIZE));
+        out.write(SIGNATURE);
+        out.writeInt(0);
+        out.writeInt(0);
+        return out;
+    }
+
+    private static void writeContent(DataOutputStream out, String cardId, String name, String content)
+            throws IOException {
+        out.writeShort(3);
+        writeText(out, cardId);
+        writeText(out, name);
+        writeText(out, content);
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * {@code timestamp} is sent as microseconds since 2000-01-01.
+     */
+    private static long micros(LocalDateTime value) {
+        return ChronoUnit.MICROS.between(POSTGRES_EPOCH, value);
+    }
+}
@@ -1,77 +1,109 @@
 package pl.gocards.api.jooq;
 
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
-import pl.gocards.api.entity.Deck;
 import pl.gocards.api.entity.FrontType;
-import pl.gocards.api.jooq.tables.records.CardFrontRecord;
-import pl.gocards.api.jooq.tables.records.DeckRecord;
 
 import java.util.*;
 
 import static pl.gocards.api.jooq.Tables.CARD_FRONT;
-import static pl.gocards.api.jooq.Tables.DECK;
 
+/**
+ * Writes fronts as set-based statements: the rows are bound as three parallel arrays and expanded with
+ * {@code unnest}, so each statement costs one round trip and three bind values regardless of the deck size.
+ */
 @Repository
 public class CardFrontRepository {
 
+    private static final Field<String> CARD_ID = DSL.field(DSL.name("front", "card_id"), SQLDataType.VARCHAR);
+    private static final Field<String> NAME = DSL.field(DSL.name("front", "name"), SQLDataType.VARCHAR);
+    private static final Field<String> CONTENT = DSL.field(DSL.name("front", "content"), SQLDataType.VARCHAR);
+
     @Autowired
     private DSLContext dslContext;
 
-    public void batchCreate(ArrayList<Map.Entry<String, Map<FrontType, String>>> records) {
-        records.forEach(it -> create(it.getKey(), it.getValue()));
-    }
+    public void batchCreate(List<Map.Entry<String, Map<FrontType, String>>> records) {
+        var rows = new Rows(records.size());
+        records.forEach(it -> it.getValue().forEach((type, content) -> rows.add(it.getKey(), type, content)));
 
-    public void create(
-            String cardId,
-            Map<FrontType, String> map
-    ) {
-        map.forEach((type, content) -> {
-            CardFrontRecord record = dslContext.newRecord(CARD_FRONT);
-            record.setCardId(cardId);
-            record.setName(type.toString());
-            record.setContent(content);
-            record.insert();
-        });
+        if (!rows.isEmpty()) {
+            dslContext.insertInto(CARD_FRONT, CARD_FRONT.CARD_ID, CARD_FRONT.NAME, CARD_FRONT.CONTENT)
+                    .select(DSL.select(CARD_ID, NAME, CONTENT).from(rows.toTable()))
+                    .execute();
+        }
     }
 
+    /**
+     * Replaces the fronts of the given cards: one {@code INSERT ... ON CONFLICT DO UPDATE} for the types present
+     * in the map and one {@code DELETE ... WHERE (card_id, name) IN (...)} for the types absent from it.
+     */
     public void batchUpdate(List<Map.Entry<String, Map<FrontType, String>>> records) {
-        records.forEach(it -> update(it.getKey(), it.getValue()));
-    }
+        var upserts = new Rows(records.size());
+        var deletions = new Rows(records.size());
 
-    public void update(
-            String cardId,
-            Map<FrontType, String> orginalMap
-    ) {
-        var existingFronts = dslContext
-                .selectFrom(CARD_FRONT)
-                .where(CARD_FRONT.CARD_ID.eq(cardId))
-                .fetchInto(CardFrontRecord.class);
-        var map = new HashMap<>(orginalMap);
-
-        List<CardFrontRecord> updates = new ArrayList<>();
-        List<CardFrontRecord> deletions = new ArrayList<>();
-
-        existingFronts.forEach(existing -> {
-            FrontType type = FrontType.valueOf(existing.getName());
-            if (map.containsKey(type)) {
-                existing.setContent(map.remove(type));
-                updates.add(existing);
-            } else {
-                deletions.add(existing);
+        records.forEach(it -> {
+            var cardId = it.getKey();
+            var fronts = it.getValue();
+            for (FrontType type : FrontType.values()) {
+                if (fronts.containsKey(type)) {
+                    upserts.add(cardId, type, fronts.get(type));
+                } else {
+                    deletions.add(cardId, type, null);
+                }
             }
         });
 
-        if (!updates.isEmpty()) {
-            dslContext.batchUpdate(updates).execute();
+        if (!upserts.isEmpty()) {
+            dslContext.insertInto(CARD_FRONT, CARD_FRONT.CARD_ID, CARD_FRONT.NAME, CARD_FRONT.CONTENT)
+                    .select(DSL.select(CARD_ID, NAME, CONTENT).from(upserts.toTable()))
+                    .onConflict(CARD_FRONT.CARD_ID, CARD_FRONT.NAME)
+                    .doUpdate()
+                    .set(CARD_FRONT.CONTENT, DSL.excluded(CARD_FRONT.CONTENT))
+                    .execute();
         }
 
         if (!deletions.isEmpty()) {
-            dslContext.batchDelete(deletions).execute();
+            dslContext.deleteFrom(CARD_FRONT)
+                    .where(DSL.row(CARD_FRONT.CARD_ID, CARD_FRONT.NAME)
+                            .in(DSL.select(CARD_ID, NAME).from(deletions.toTable())))
+                    .execute();
         }
-
-        create(cardId, map);
     }
 
+    private static class Rows {
+
+        private final List<String> cardIds;
+        private final List<String> names;
+        private final List<String> contents;
+
+        Rows(int expectedSize) {
+            cardIds = new ArrayList<>(expectedSize);
+            names = new ArrayList<>(expectedSize);
+            contents = new ArrayList<>(expectedSize);
+        }
+
+        void add(String cardId, FrontType type, String content) {
+            cardIds.add(cardId);
+            names.add(type.name());
+            contents.add(content);
+        }
+
+        boolean isEmpty() {
+            return cardIds.isEmpty();
+        }
+
+        Table<?> toTable() {
+            return DSL.table(
+                    "unnest({0}, {1}, {2})",
+                    DSL.val(cardIds.toArray(String[]::new)),
+                    DSL.val(names.toArray(String[]::new)),
+                    DSL.val(contents.toArray(String[]::new))
+            ).as("front", "card_id", "name", "content");
+        }
+    }
 }
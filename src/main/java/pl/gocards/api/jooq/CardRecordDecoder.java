@@ -0,0 +1,123 @@
+package pl.gocards.api.jooq;
+
+import org.jooq.Cursor;
+import org.jooq.Record;
+import pl.gocards.api.entity.BackType;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+import pl.gocards.api.entity.FrontType;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static pl.gocards.api.jooq.Tables.*;
+
+/**
+ * Folds the rows of the card / card_front / card_back join into {@link Card}s in a single pass.
+ * <p>
+ * The rows of one card must be adjacent, which holds for any query ordered by (ordinal, id).
+ * A card is emitted as soon as the card id changes, so only the current card is kept in memory.
+ * <p>
+ * Rows that carry the {@code term} and {@code definition} columns of {@code card}
+ * ({@link StorageLayout#denormalized}) map to one card each.
+ */
+class CardRecordDecoder implements Iterator<Card> {
+
+    private final Iterator<? extends Record> records;
+
+    private Record lookahead;
+
+    private final boolean denormalized;
+
+    CardRecordDecoder(Iterator<? extends Record> records) {
+        this.records = records;
+        this.lookahead = nextRecord();
+        this.denormalized = lookahead != null && lookahead.field(CARD.TERM) != null;
+    }
+
+    static Stream<Card> stream(Cursor<? extends Record> cursor) {
+        var spliterator = Spliterators.spliteratorUnknownSize(
+                new CardRecordDecoder(cursor.iterator()),
+                Spliterator.ORDERED | Spliterator.NONNULL
+        );
+        return StreamSupport.stream(spliterator, false).onClose(cursor::close);
+    }
+
+    /**
+     * Like {@link #stream(Cursor)} for rows ordered by ({@code deck_id}, ordinal, id) that include {@code deck_id}.
+     *
+     * @return the cards by deck ID, in the order of the rows
+     */
+    static Map<String, List<Card>> groupByDeck(Cursor<? extends Record> cursor) {
+        Map<String, List<Card>> cards = new LinkedHashMap<>();
+        try (cursor) {
+            var decoder = new CardRecordDecoder(cursor.iterator());
+            while (decoder.hasNext()) {
+                var deckId = decoder.lookahead.get(CARD.DECK_ID);
+                cards.computeIfAbsent(deckId, key -> new ArrayList<>()).add(decoder.next());
+            }
+        }
+        return cards;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return lookahead != null;
+    }
+
+    @Override
+    public Card next() {
+        if (lookahead == null) {
+            throw new NoSuchElementException();
+        }
+
+        var first = lookahead;
+        if (denormalized) {
+            lookahead = nextRecord();
+            return toCard(first, first.get(CARD.TERM), first.get(CARD.DEFINITION));
+        }
+
+        var cardId = first.get(CARD.ID);
+        String term = null;
+        String definition = null;
+
+        var record = first;
+        do {
+            if (term == null && FrontType.term.name().equals(record.get(CARD_FRONT.NAME))) {
+                term = record.get(CARD_FRONT.CONTENT);
+            }
+            if (definition == null && BackType.definition.name().equals(record.get(CARD_BACK.NAME))) {
+                definition = record.get(CARD_BACK.CONTENT);
+            }
+            record = nextRecord();
+        } while (record != null && cardId.equals(record.get(CARD.ID)));
+        lookahead = record;
+
+        return toCard(first, term, definition);
+    }
+
+    private static Card toCard(Record record, String term, String definition) {
+        return new Card(
+                record.get(CARD.ID),
+                record.get(CARD.ORDINAL),
+                new CardFront(term),
+                new CardBack(definition),
+                record.get(CARD.CREATED_AT, Timestamp.class),
+                record.get(CARD.UPDATED_AT, Timestamp.class)
+        );
+    }
+
+    private Record nextRecord() {
+        return records.hasNext() ? records.next() : null;
+    }
+}
@@ -1,22 +1,36 @@
 package pl.gocards.api.jooq;
 
+import org.jooq.Condition;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
+import org.jooq.Field;
 import org.jooq.Record;
-import org.jooq.UpdateConditionStep;
+import org.jooq.SelectField;
+import org.jooq.SelectWhereStep;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConnectionProvider;
+import org.jooq.impl.SQLDataType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.support.TransactionTemplate;
 import pl.gocards.api.entity.BackType;
 import pl.gocards.api.entity.FrontType;
-import pl.gocards.api.jooq.tables.records.CardBackRecord;
-import pl.gocards.api.jooq.tables.records.CardFrontRecord;
 import pl.gocards.api.jooq.tables.records.CardRecord;
 import pl.gocards.api.entity.CardBack;
 import pl.gocards.api.entity.CardFront;
 import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardDiff;
+import pl.gocards.api.entity.CardMove;
+import pl.gocards.api.entity.CardPatch;
 
-import java.sql.Timestamp;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -25,71 +39,226 @@ import static pl.gocards.api.jooq.Tables.*;
 @Repository
 public class CardRepository {
 
+    /**
+     * Space left between the ordinals of adjacent cards, so that a card can be inserted or moved between two
+     * others by writing only its own row.
+     */
+    public static final int ORDINAL_GAP = 1024;
+
+    private static final Field<String> CONTENT_CARD_ID = DSL.field(DSL.name("content", "card_id"), SQLDataType.VARCHAR);
+    private static final Field<String> CONTENT_TERM = DSL.field(DSL.name("content", "term"), SQLDataType.VARCHAR);
+    private static final Field<String> CONTENT_DEFINITION = DSL.field(DSL.name("content", "definition"), SQLDataType.VARCHAR);
+    private static final Field<String> MOVED_CARD_ID = DSL.field(DSL.name("moved", "card_id"), SQLDataType.VARCHAR);
+    private static final Field<Integer> MOVED_ORDINAL = DSL.field(DSL.name("moved", "ordinal"), SQLDataType.INTEGER);
+
     private final DSLContext dslContext;
+    private final DataSource dataSource;
     private final CardFrontRepository cardFrontRepository;
     private final CardBackRepository cardBackRepository;
+    private final CardCopyLoader cardCopyLoader;
+    private final int copyThreshold;
+    private final StorageLayout storageLayout;
 
 
     public CardRepository(
             DSLContext dslContext,
+            DataSource dataSource,
             CardFrontRepository cardFrontRepository,
-            CardBackRepository cardBackRepository
+            CardBackRepository cardBackRepository,
+            CardCopyLoader cardCopyLoader,
+            @Value("${gocards.cards.copy-threshold:5000}") int copyThreshold,
+            @Value("${gocards.storage.layout:normalized}") StorageLayout storageLayout
     ) {
         this.dslContext = dslContext;
+        this.dataSource = dataSource;
         this.cardFrontRepository = cardFrontRepository;
         this.cardBackRepository = cardBackRepository;
+        this.cardCopyLoader = cardCopyLoader;
+        this.copyThreshold = copyThreshold;
+        this.storageLayout = storageLayout;
+    }
+
+    /**
+     * @return the largest gap up to {@link #ORDINAL_GAP} that fits {@code count} cards into positive ordinals
+     */
+    public static int ordinalGap(int count) {
+        return (int) Math.min(ORDINAL_GAP, Integer.MAX_VALUE / (count + 1L));
     }
 
     public Stream<Card> findByDeck(String deckId) {
-        var groupedRecords = dslContext
-                .select()
-                .from(CARD)
-                .leftOuterJoin(CARD_FRONT).on(CARD_FRONT.CARD_ID.eq(CARD.ID))
-                .leftOuterJoin(CARD_BACK).on(CARD_BACK.CARD_ID.eq(CARD.ID))
+        var cursor = selectCards()
                 .where(CARD.DECK_ID.equal(deckId))
-                .orderBy(CARD.ORDINAL)
-                .fetchGroups(CARD.ID);
+                .orderBy(CARD.ORDINAL, CARD.ID)
+                .fetchLazy();
 
-        return groupedRecords
-                .entrySet()
-                .stream()
-                .map(entry -> buildCard(entry.getKey(), entry.getValue()));
+        return CardRecordDecoder.stream(cursor);
     }
 
-    private Card buildCard(String cardId, List<Record> records) {
-        var card = records.stream()
-                .map(record -> record.into(CARD))
-                .findFirst()
-                .orElse(null);
+    /**
+     * Like {@link #findByDeck(String)}, but reads the rows through a server-side cursor, {@code fetchSize} rows
+     * per round trip, so memory use does not depend on the deck size.
+     * <p>
+     * PostgreSQL only honours the fetch size inside a transaction, so the cursor runs on a dedicated connection,
+     * outside any Spring-managed transaction, in a read-only transaction that lasts until the returned stream
+     * is closed.
+     */
+    public Stream<Card> streamByDeck(String deckId, int fetchSize) {
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new CannotGetJdbcConnectionException("Could not open a connection for the card cursor", e);
+        }
 
-        assert card != null;
+        try {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+
+            var query = selectCards()
+                    .where(CARD.DECK_ID.equal(deckId))
+                    .orderBy(CARD.ORDINAL, CARD.ID)
+                    .fetchSize(fetchSize);
+            var cursor = DSL.using(dslContext.configuration().derive(new DefaultConnectionProvider(connection)))
+                    .fetchLazy(query);
+
+            return CardRecordDecoder.stream(cursor).onClose(() -> release(connection));
+        } catch (SQLException e) {
+            release(connection);
+            throw new DataAccessResourceFailureException("Could not open the card cursor", e);
+        } catch (RuntimeException e) {
+            release(connection);
+            throw e;
+        }
+    }
 
-        return new Card(
-                cardId,
-                card.getOrdinal(),
-                new CardFront(extractTerm(records)),
-                new CardBack(extractDefinition(records)),
-                card.get(CARD.CREATED_AT, Timestamp.class),
-                card.get(CARD.UPDATED_AT, Timestamp.class)
-        );
+    /**
+     * Ends the read-only transaction and returns the connection to the pool, which restores autocommit.
+     */
+    private static void release(Connection connection) {
+        try (connection) {
+            connection.rollback();
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not release the card cursor connection", e);
+        }
     }
 
-    private String extractTerm(List<Record> records) {
-        return records.stream()
-                .map(record -> record.into(CARD_FRONT))
-                .filter(record -> Objects.equals(record.getName(), FrontType.term.name()))
-                .findFirst()
-                .map(CardFrontRecord::getContent)
-                .orElse(null);
+    /**
+     * Reads one page of the deck's cards with a range scan of the ({@code deck_id}, ordinal, id) index that stops
+     * after {@code limit} cards, so a page costs the same whatever the deck size. In the normalized layout the page
+     * is cut before joining the content, which has several rows per card.
+     *
+     * @param afterOrdinal ordinal of the last card of the previous page, or {@code null} for the first page
+     * @param afterId      ID of the last card of the previous page
+     */
+    public List<Card> findPage(String deckId, Integer afterOrdinal, String afterId, int limit) {
+        Condition condition = CARD.DECK_ID.equal(deckId);
+        if (afterOrdinal != null) {
+            condition = condition.and(DSL.row(CARD.ORDINAL, CARD.ID).greaterThan(afterOrdinal, afterId));
+        }
+
+        Cursor<? extends Record> cursor;
+        if (storageLayout == StorageLayout.denormalized) {
+            cursor = selectCards()
+                    .where(condition)
+                    .orderBy(CARD.ORDINAL, CARD.ID)
+                    .limit(limit)
+                    .fetchLazy();
+        } else {
+            var page = DSL.select(CARD.ID)
+                    .from(CARD)
+                    .where(condition)
+                    .orderBy(CARD.ORDINAL, CARD.ID)
+                    .limit(limit);
+            cursor = selectCards()
+                    .where(CARD.ID.in(page))
+                    .orderBy(CARD.ORDINAL, CARD.ID)
+                    .fetchLazy();
+        }
+
+        try (var cards = CardRecordDecoder.stream(cursor)) {
+            return cards.toList();
+        }
     }
 
-    private String extractDefinition(List<Record> records) {
-        return records.stream()
-                .map(record -> record.into(CARD_BACK))
-                .filter(record -> Objects.equals(record.getName(), BackType.definition.name()))
-                .findFirst()
-                .map(CardBackRecord::getContent)
-                .orElse(null);
+    public Stream<Card> findByIds(String deckId, Collection<String> cardIds) {
+        var cursor = selectCards()
+                .where(CARD.DECK_ID.equal(deckId))
+                .and(CARD.ID.in(cardIds))
+                .orderBy(CARD.ORDINAL, CARD.ID)
+                .fetchLazy();
+
+        return CardRecordDecoder.stream(cursor);
+    }
+
+    /**
+     * @return the cards created or changed after {@code since}, ordered by ordinal
+     */
+    public Stream<Card> findUpdatedSince(String deckId, LocalDateTime since) {
+        var cursor = selectCards()
+                .where(CARD.DECK_ID.equal(deckId))
+                .and(CARD.UPDATED_AT.greaterThan(since))
+                .orderBy(CARD.ORDINAL, CARD.ID)
+                .fetchLazy();
+
+        return CardRecordDecoder.stream(cursor);
+    }
+
+    /**
+     * @return the IDs of the cards deleted after {@code since}
+     */
+    public List<String> findDeletedSince(String deckId, LocalDateTime since) {
+        return dslContext
+                .select(CARD_TOMBSTONE.CARD_ID)
+                .from(CARD_TOMBSTONE)
+                .where(CARD_TOMBSTONE.DECK_ID.eq(deckId))
+                .and(CARD_TOMBSTONE.DELETED_AT.greaterThan(since))
+                .fetch(CARD_TOMBSTONE.CARD_ID);
+    }
+
+    /**
+     * The cards of all given decks in one query, for syncing many decks at once.
+     *
+     * @return the cards by deck ID, ordered by ordinal; decks without cards are absent
+     */
+    public Map<String, List<Card>> findByDecks(Collection<String> deckIds) {
+        var cursor = selectCards(CARD.DECK_ID)
+                .where(CARD.DECK_ID.in(deckIds))
+                .orderBy(CARD.DECK_ID, CARD.ORDINAL, CARD.ID)
+                .fetchLazy();
+
+        return CardRecordDecoder.groupByDeck(cursor);
+    }
+
+    private SelectWhereStep<? extends Record> selectCards(SelectField<?>... extraFields) {
+        if (storageLayout == StorageLayout.denormalized) {
+            return dslContext
+                    .select(
+                            CARD.ID,
+                            CARD.ORDINAL,
+                            CARD.CREATED_AT,
+                            CARD.UPDATED_AT,
+                            CARD.TERM,
+                            CARD.DEFINITION
+                    )
+                    .select(extraFields)
+                    .from(CARD);
+        }
+
+        return dslContext
+                .select(
+                        CARD.ID,
+                        CARD.ORDINAL,
+                        CARD.CREATED_AT,
+                        CARD.UPDATED_AT,
+                        CARD_FRONT.NAME,
+                        CARD_FRONT.CONTENT,
+                        CARD_BACK.NAME,
+                        CARD_BACK.CONTENT
+                )
+                .select(extraFields)
+                .from(CARD)
+                .leftOuterJoin(CARD_FRONT).on(CARD_FRONT.CARD_ID.eq(CARD.ID))
+                .leftOuterJoin(CARD_BACK).on(CARD_BACK.CARD_ID.eq(CARD.ID));
     }
 
     public Set<String> findIdsByDeck(String deckId) {
@@ -103,11 +272,29 @@ public class CardRepository {
                 .collect(Collectors.toUnmodifiableSet());
     }
 
+    public Set<String> findIdsByDeck(String deckId, Collection<String> cardIds) {
+        return dslContext
+                .select(CARD.ID)
+                .from(CARD)
+                .where(CARD.DECK_ID.equal(deckId))
+                .and(CARD.ID.in(cardIds))
+                .fetchSet(CARD.ID);
+    }
+
+    /**
+     * From {@code gocards.cards.copy-threshold} cards on, the rows are loaded with {@code COPY} instead of
+     * {@code INSERT} statements.
+     */
     private void performCreate(
             String deckId,
             List<Card> cards,
             LocalDateTime now
     ) {
+        if (cards.size() >= copyThreshold) {
+            cardCopyLoader.copy(deckId, cards, now, storageLayout == StorageLayout.normalized);
+            return;
+        }
+
         var cardRecords = new ArrayList<CardRecord>(cards.size());
         var frontRecords = new ArrayList<Map.Entry<String, Map<FrontType, String>>>(cards.size());
         var backRecords = new ArrayList<Map.Entry<String, Map<BackType, String>>>(cards.size());
@@ -122,6 +309,9 @@ public class CardRepository {
         if (!cardRecords.isEmpty()) {
             dslContext.batchInsert(cardRecords).execute();
         }
+        if (storageLayout == StorageLayout.denormalized) {
+            return;
+        }
         if (!frontRecords.isEmpty()) {
             cardFrontRepository.batchCreate(frontRecords);
         }
@@ -165,115 +355,282 @@ public class CardRepository {
         record.setId(card.id());
         record.setDeckId(deckId);
         record.setOrdinal(card.ordinal());
+        record.setTerm(card.front() == null ? null : card.front().term());
+        record.setDefinition(card.back() == null ? null : card.back().definition());
         record.setCreatedAt(now);
         record.setUpdatedAt(now);
         return record;
     }
 
-    public int update(
+    /**
+     * Writes a diff computed against the current cards of the deck.
+     */
+    public void apply(
             String deckId,
-            List<Card> cards,
-            LocalDateTime now,
-            Runnable finalizeFn
+            CardDiff diff,
+            LocalDateTime now
+    ) {
+        performDelete(deckId, diff.deletions(), now);
+        reorder(deckId, diff.moves(), now);
+        performUpdate(diff.updates(), now);
+        performCreate(deckId, diff.creations(), now);
+    }
+
+    /**
+     * Applies the patch and returns the IDs of every card whose row was written,
+     * including cards renumbered to make room for a creation or a move.
+     */
+    public Set<String> patch(
+            String deckId,
+            CardPatch patch,
+            LocalDateTime now
     ) {
-        var existingCardRecords = fetchCardRecords(deckId);
-        var existingCardIds = extractIds(existingCardRecords);
-        var existingCards = findByDeck(deckId).toList();
+        var changedCardIds = new LinkedHashSet<String>();
 
-        var updates = filterUpdates(cards, existingCardIds, existingCards);
-        var creations = filterCreations(cards, existingCardIds);
-        var deletions = filterDeletions(existingCardRecords, cards);
+        performDelete(deckId, patch.deletions(), now);
+        performUpdate(patch.updates(), now);
+        changedCardIds.addAll(append(deckId, patch.creations(), now));
+        patch.updates().forEach(card -> changedCardIds.add(card.id()));
+        patch.creations().forEach(card -> changedCardIds.add(card.id()));
 
-        performDelete(deletions);
-        performUpdate(updates, now);
-        performCreate(deckId, creations, now);
-        if (finalizeFn != null) finalizeFn.run();
+        for (var move : patch.moves()) {
+            changedCardIds.addAll(move(deckId, move, now));
+        }
 
-        return updates.size() + creations.size() + deletions.size();
+        return changedCardIds;
     }
 
-    private List<CardRecord> fetchCardRecords(String deckId) {
-        return dslContext.select()
+    /**
+     * Creates the cards after the last card of the deck, in the given order, {@link #ORDINAL_GAP} apart.
+     *
+     * @return the IDs of the existing cards renumbered to make room at the end of the deck, usually none
+     */
+    public List<String> append(String deckId, List<Card> cards, LocalDateTime now) {
+        if (cards.isEmpty()) {
+            return List.of();
+        }
+
+        List<String> renumberedCardIds = List.of();
+        var maxOrdinal = maxOrdinal(deckId);
+        var step = appendStep(maxOrdinal, cards.size());
+        if (step < 1) {
+            renumberedCardIds = rebalance(deckId, cards.size(), now);
+            maxOrdinal = maxOrdinal(deckId);
+            step = appendStep(maxOrdinal, cards.size());
+        }
+
+        var ordinal = new AtomicLong(maxOrdinal);
+        long gap = step;
+        var appended = cards.stream()
+                .map(card -> new Card(card.id(), (int) ordinal.addAndGet(gap), card.front(), card.back(), null, null))
+                .toList();
+        performCreate(deckId, appended, now);
+        return renumberedCardIds;
+    }
+
+    private int maxOrdinal(String deckId) {
+        return dslContext
+                .select(DSL.max(CARD.ORDINAL))
                 .from(CARD)
                 .where(CARD.DECK_ID.eq(deckId))
-                .fetch()
-                .into(CardRecord.class);
+                .fetchOptional(0, Integer.class)
+                .orElse(0);
     }
 
-    private Set<String> extractIds(List<CardRecord> records) {
-        return records.stream()
-                .map(CardRecord::getId)
-                .collect(Collectors.toSet());
+    private static long appendStep(int maxOrdinal, int count) {
+        return Math.min(ORDINAL_GAP, ((long) Integer.MAX_VALUE - maxOrdinal) / (count + 1));
     }
 
-    private List<Card> filterUpdates(
-            List<Card> updatedCards,
-            Set<String> existingCardIds,
-            List<Card> existingCards
-    ) {
-        return updatedCards.stream()
-                .filter(card -> existingCardIds.contains(card.id()))
-                .filter(updatedCard -> {
-
-                    var existingCard = existingCards
-                            .stream()
-                            .filter(card -> card.id().equals(updatedCard.id()))
-                            .findFirst()
-                            .orElseThrow();
-
-                    return !updatedCard.equals(existingCard);
-                })
-                .toList();
+    /**
+     * Gives the card an ordinal between the card it is moved after and that card's successor, so that only the
+     * moved card is written. When the two have adjacent ordinals, the deck is renumbered first.
+     */
+    private List<String> move(String deckId, CardMove move, LocalDateTime now) {
+        if (move.cardId().equals(move.afterCardId())) {
+            return List.of();
+        }
+
+        var ordinals = dslContext
+                .select(CARD.ID, CARD.ORDINAL)
+                .from(CARD)
+                .where(CARD.DECK_ID.eq(deckId))
+                .and(CARD.ID.in(move.cardId(), move.afterCardId()))
+                .fetchMap(CARD.ID, CARD.ORDINAL);
+
+        int current = ordinals.get(move.cardId());
+        Integer low = move.afterCardId() == null ? null : ordinals.get(move.afterCardId());
+        Integer high = dslContext
+                .select(DSL.min(CARD.ORDINAL))
+                .from(CARD)
+                .where(CARD.DECK_ID.eq(deckId))
+                .and(CARD.ID.ne(move.cardId()))
+                .and(low == null ? DSL.noCondition() : CARD.ORDINAL.greaterThan(low))
+                .fetchOptional(0, Integer.class)
+                .orElse(null);
+
+        if ((low == null || current > low) && (high == null || current < high)) {
+            return List.of();
+        }
+
+        var ordinal = ordinalBetween(low, high);
+        if (ordinal == null) {
+            var changedCardIds = new ArrayList<>(rebalance(deckId, 0, now));
+            changedCardIds.addAll(move(deckId, move, now));
+            return changedCardIds;
+        }
+
+        dslContext.update(CARD)
+                .set(CARD.ORDINAL, ordinal)
+                .set(CARD.UPDATED_AT, now)
+                .where(CARD.DECK_ID.eq(deckId))
+                .and(CARD.ID.eq(move.cardId()))
+                .execute();
+        return List.of(move.cardId());
     }
 
-    private List<Card> filterCreations(List<Card> cards, Set<String> existingCardIds) {
-        return cards.stream()
-                .filter(card -> !existingCardIds.contains(card.id()))
-                .toList();
+    /**
+     * @param low  the ordinal of the previous card, or {@code null} for the top of the deck
+     * @param high the ordinal of the next card, or {@code null} for the end of the deck
+     * @return an ordinal strictly between the two, or {@code null} if there is none
+     */
+    private static Integer ordinalBetween(Integer low, Integer high) {
+        long ordinal;
+        if (low == null) {
+            ordinal = (long) high - ORDINAL_GAP;
+        } else if (high == null) {
+            ordinal = (long) low + ORDINAL_GAP;
+        } else if ((long) high - low >= 2) {
+            ordinal = low + ((long) high - low) / 2;
+        } else {
+            return null;
+        }
+        return ordinal < Integer.MIN_VALUE || ordinal > Integer.MAX_VALUE ? null : (int) ordinal;
     }
 
-    private List<CardRecord> filterDeletions(List<CardRecord> existingCards, List<Card> cards) {
-        var cardsIds = cards.stream()
-                .map(Card::id)
-                .collect(Collectors.toSet());
+    /**
+     * Renumbers the cards of the deck {@link #ordinalGap(int)} apart, keeping their order, in one statement.
+     *
+     * @param reserve the number of cards about to be appended, which must fit after the renumbered ones
+     * @return the IDs of the renumbered cards
+     */
+    private List<String> rebalance(String deckId, int reserve, LocalDateTime now) {
+        var count = dslContext.fetchCount(CARD, CARD.DECK_ID.eq(deckId));
+        var position = DSL.rowNumber().over(DSL.orderBy(CARD.ORDINAL, CARD.ID)).as("position");
+        var ranked = DSL.select(CARD.ID, position)
+                .from(CARD)
+                .where(CARD.DECK_ID.eq(deckId))
+                .asTable("ranked");
 
-        return existingCards.stream()
-                .filter(card -> !cardsIds.contains(card.getId()))
-                .toList();
+        return dslContext.update(CARD)
+                .set(CARD.ORDINAL, ranked.field(position).mul(ordinalGap(count + reserve)))
+                .set(CARD.UPDATED_AT, now)
+                .from(ranked)
+                .where(CARD.ID.eq(ranked.field(CARD.ID)))
+                .returning(CARD.ID)
+                .fetch(CARD.ID);
     }
 
     private void performUpdate(List<Card> cards, LocalDateTime now) {
+        if (cards.isEmpty()) {
+            return;
+        }
+
         var frontRecords = new ArrayList<Map.Entry<String, Map<FrontType, String>>>(cards.size());
         var backRecords = new ArrayList<Map.Entry<String, Map<BackType, String>>>(cards.size());
-        List<UpdateConditionStep<CardRecord>> cardUpdates = new ArrayList<>(cards.size());
-
-        for (var card : cards) {
-            addFrontRecord(frontRecords, card.id(), card.front());
-            addBackRecord(backRecords, card.id(), card.back());
-            cardUpdates.add(updateUpdatedAt(card.id(), now));
+        var cardIds = new String[cards.size()];
+        var terms = new String[cards.size()];
+        var definitions = new String[cards.size()];
+
+        for (int i = 0; i < cards.size(); i++) {
+            var card = cards.get(i);
+            // An empty map removes the stored content, so clearing a term or definition is persisted too.
+            frontRecords.add(Map.entry(card.id(), toFrontMap(card.front())));
+            backRecords.add(Map.entry(card.id(), toBackMap(card.back())));
+            cardIds[i] = card.id();
+            terms[i] = card.front() == null ? null : card.front().term();
+            definitions[i] = card.back() == null ? null : card.back().definition();
         }
 
-        if (!cardUpdates.isEmpty()) {
-            dslContext.batch(cardUpdates).execute();
+        Table<?> content = DSL.table("unnest({0}, {1}, {2})", DSL.val(cardIds), DSL.val(terms), DSL.val(definitions))
+                .as("content", "card_id", "term", "definition");
+        dslContext.update(CARD)
+                .set(CARD.TERM, CONTENT_TERM)
+                .set(CARD.DEFINITION, CONTENT_DEFINITION)
+                .set(CARD.UPDATED_AT, now)
+                .from(content)
+                .where(CARD.ID.eq(CONTENT_CARD_ID))
+                .execute();
+
+        if (storageLayout == StorageLayout.denormalized) {
+            return;
         }
+        cardFrontRepository.batchUpdate(frontRecords);
+        cardBackRepository.batchUpdate(backRecords);
+    }
 
-        if (!frontRecords.isEmpty()) {
-            cardFrontRepository.batchUpdate(frontRecords);
+    private Map<FrontType, String> toFrontMap(CardFront cardFront) {
+        if (cardFront == null || cardFront.term() == null) {
+            return Map.of();
         }
-        if (!backRecords.isEmpty()) {
-            cardBackRepository.batchUpdate(backRecords);
+        return Map.of(FrontType.term, cardFront.term());
+    }
+
+    private Map<BackType, String> toBackMap(CardBack cardBack) {
+        if (cardBack == null || cardBack.definition() == null) {
+            return Map.of();
         }
+        return Map.of(BackType.definition, cardBack.definition());
     }
 
-    private UpdateConditionStep<CardRecord> updateUpdatedAt(String cardId, LocalDateTime updatedAt) {
-        return dslContext.update(CARD)
-                .set(CARD.UPDATED_AT, updatedAt)
-                .where(CARD.ID.eq(cardId));
+    /**
+     * Sets the ordinals of the given cards in one {@code UPDATE ... FROM} statement. The (id, ordinal) pairs are
+     * bound as two arrays, so the statement has the same number of bind values for any number of cards.
+     * <p>
+     * The (deck_id, ordinal) unique constraint is deferred to commit, so cards may swap positions within
+     * the statement.
+     */
+    public void reorder(String deckId, List<Card> cards, LocalDateTime now) {
+        if (cards.isEmpty()) {
+            return;
+        }
+
+        var cardIds = new String[cards.size()];
+        var ordinals = new Integer[cards.size()];
+        for (int i = 0; i < cards.size(); i++) {
+            cardIds[i] = cards.get(i).id();
+            ordinals[i] = cards.get(i).ordinal();
+        }
+
+        Table<?> moved = DSL.table("unnest({0}, {1})", DSL.val(cardIds), DSL.val(ordinals))
+                .as("moved", "card_id", "ordinal");
+        dslContext.update(CARD)
+                .set(CARD.ORDINAL, MOVED_ORDINAL)
+                .set(CARD.UPDATED_AT, now)
+                .from(moved)
+                .where(CARD.DECK_ID.eq(deckId))
+                .and(CARD.ID.eq(MOVED_CARD_ID))
+                .execute();
     }
 
-    private void performDelete(List<CardRecord> cards) {
-        if (!cards.isEmpty()) {
-            dslContext.batchDelete(cards).execute();
+    /**
+     * Leaves a tombstone for every deleted card, so that the change feed can report the deletion.
+     */
+    private void performDelete(String deckId, Collection<String> cardIds, LocalDateTime now) {
+        if (!cardIds.isEmpty()) {
+            dslContext.insertInto(CARD_TOMBSTONE, CARD_TOMBSTONE.CARD_ID, CARD_TOMBSTONE.DECK_ID, CARD_TOMBSTONE.DELETED_AT)
+                    .select(DSL.select(CARD.ID, CARD.DECK_ID, DSL.val(now))
+                            .from(CARD)
+                            .where(CARD.DECK_ID.eq(deckId))
+                            .and(CARD.ID.in(cardIds)))
+                    .onConflict(CARD_TOMBSTONE.CARD_ID)
+                    .doUpdate()
+                    .set(CARD_TOMBSTONE.DELETED_AT, DSL.excluded(CARD_TOMBSTONE.DELETED_AT))
+                    .execute();
+
+            dslContext.deleteFrom(CARD)
+                    .where(CARD.DECK_ID.eq(deckId))
+                    .and(CARD.ID.in(cardIds))
+                    .execute();
         }
     }
 }
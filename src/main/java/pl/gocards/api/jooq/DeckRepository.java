@@ -3,11 +3,12 @@ package pl.gocards.api.jooq;
 import org.jooq.DSLContext;
 import org.springframework.stereotype.Repository;
 import pl.gocards.api.entity.Deck;
-import pl.gocards.api.exception.DeckNotFoundException;
 import pl.gocards.api.jooq.tables.records.DeckRecord;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 import static pl.gocards.api.jooq.Tables.*;
 
@@ -20,17 +21,22 @@ public class DeckRepository {
         this.dslContext = dslContext;
     }
 
-    public boolean existsWithUpdateLock(String id) {
-        return dslContext.fetchExists(
-                dslContext.selectFrom(DECK)
-                        .where(DECK.ID.eq(id))
-                .forUpdate()
-        );
-    }
-
     public Deck find(String deckId) {
         DeckRecord record = dslContext.fetchOne(DECK, DECK.ID.eq(deckId));
 
+        return toDomain(record);
+    }
+
+    /**
+     * @return the decks that exist, in no particular order
+     */
+    public List<Deck> findByIds(Collection<String> deckIds) {
+        return dslContext.selectFrom(DECK)
+                .where(DECK.ID.in(deckIds))
+                .fetch(this::toDomain);
+    }
+
+    private Deck toDomain(DeckRecord record) {
         if (record == null) {
             return null;
         } else {
@@ -38,7 +44,8 @@ public class DeckRepository {
                     record.getId(),
                     record.getName(),
                     record.get(DECK.CREATED_AT, Timestamp.class),
-                    record.get(DECK.UPDATED_AT, Timestamp.class)
+                    record.get(DECK.UPDATED_AT, Timestamp.class),
+                    record.getVersion()
             );
         }
     }
@@ -52,22 +59,34 @@ public class DeckRepository {
         record.store();
     }
 
-    public void update(Deck deck, LocalDateTime updatedAt) {
-        DeckRecord record = dslContext.fetchOne(DECK, DECK.ID.eq(deck.id()));
-        if (record == null) {
-            throw new DeckNotFoundException(deck.id());
-        }
-        record.setName(deck.name());
-        record.setUpdatedAt(updatedAt);
-        record.update();
+    /**
+     * Renames the deck only if its version is still {@code expectedVersion}, like {@link #compareAndSetVersion}.
+     *
+     * @return {@code false} if the deck was modified since it was read
+     */
+    public boolean rename(String deckId, String name, int expectedVersion, LocalDateTime updatedAt) {
+        return dslContext.update(DECK)
+                .set(DECK.NAME, name)
+                .set(DECK.UPDATED_AT, updatedAt)
+                .set(DECK.VERSION, DECK.VERSION.plus(1))
+                .where(DECK.ID.eq(deckId))
+                .and(DECK.VERSION.eq(expectedVersion))
+                .execute() == 1;
     }
 
-    public void updateUpdatedAt(String deckId, LocalDateTime updatedAt) {
-        DeckRecord record = dslContext.fetchOne(DECK, DECK.ID.eq(deckId));
-        if (record == null) {
-            throw new DeckNotFoundException(deckId);
-        }
-        record.setUpdatedAt(updatedAt);
-        record.update();
+    /**
+     * Bumps the version of the deck only if it is still {@code expectedVersion}. Called after the new state was
+     * computed from a read without locks and before it is written, so that the row lock is held only for the
+     * writes. A concurrent writer that has not committed yet makes this statement wait for it and then fail.
+     *
+     * @return {@code false} if the deck was modified since it was read
+     */
+    public boolean compareAndSetVersion(String deckId, int expectedVersion, LocalDateTime updatedAt) {
+        return dslContext.update(DECK)
+                .set(DECK.UPDATED_AT, updatedAt)
+                .set(DECK.VERSION, DECK.VERSION.plus(1))
+                .where(DECK.ID.eq(deckId))
+                .and(DECK.VERSION.eq(expectedVersion))
+                .execute() == 1;
     }
 }
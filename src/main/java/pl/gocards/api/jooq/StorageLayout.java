@@ -0,0 +1,20 @@
+package pl.gocards.api.jooq;
+
+/**
+ * Where the content of a card is read from, selected with {@code gocards.storage.layout}.
+ */
+public enum StorageLayout {
+
+    /**
+     * Content is read from the {@code card_front} and {@code card_back} rows. The {@code term} and
+     * {@code definition} columns of {@code card} are written too, so the layout can be switched to
+     * {@link #denormalized} at any time.
+     */
+    normalized,
+
+    /**
+     * Content is read from and written to the {@code term} and {@code definition} columns of {@code card} only,
+     * so reads scan one table. {@code card_front} and {@code card_back} are no longer written.
+     */
+    denormalized
+}
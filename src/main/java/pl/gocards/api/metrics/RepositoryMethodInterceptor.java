@@ -0,0 +1,46 @@
+package pl.gocards.api.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the repository method running on the current thread, e.g. {@code CardFrontRepository.batchUpdate},
+ * so that {@link SqlMetricsListener} can tag statements with it. When repositories call each other,
+ * the innermost method wins.
+ */
+class RepositoryMethodInterceptor implements MethodInterceptor {
+
+    static final String UNKNOWN = "unknown";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private final Map<Method, String> names = new ConcurrentHashMap<>();
+
+    static String current() {
+        var method = CURRENT.get();
+        return method == null ? UNKNOWN : method;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        var name = names.computeIfAbsent(invocation.getMethod(), method ->
+                ClassUtils.getUserClass(invocation.getThis()).getSimpleName() + "." + method.getName());
+
+        var previous = CURRENT.get();
+        CURRENT.set(name);
+        try {
+            return invocation.proceed();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package pl.gocards.api.metrics;
+
+import org.springframework.aop.framework.AbstractAdvisingBeanPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Applies {@link RepositoryMethodInterceptor} to every {@link Repository} bean.
+ */
+class RepositoryMethodPostProcessor extends AbstractAdvisingBeanPostProcessor {
+
+    RepositoryMethodPostProcessor() {
+        this.advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forClassAnnotation(Repository.class),
+                new RepositoryMethodInterceptor()
+        );
+        setBeforeExistingAdvisors(true);
+    }
+}
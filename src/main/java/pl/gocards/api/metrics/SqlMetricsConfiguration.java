@@ -0,0 +1,23 @@
+package pl.gocards.api.metrics;
+
+import org.jooq.ExecuteListenerProvider;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SqlMetricsConfiguration {
+
+    /**
+     * Picked up by the jOOQ auto-configuration.
+     */
+    @Bean
+    public ExecuteListenerProvider sqlMetricsListenerProvider(SqlMetricsListener sqlMetricsListener) {
+        return new DefaultExecuteListenerProvider(sqlMetricsListener);
+    }
+
+    @Bean
+    static RepositoryMethodPostProcessor repositoryMethodPostProcessor() {
+        return new RepositoryMethodPostProcessor();
+    }
+}
@@ -0,0 +1,158 @@
+package pl.gocards.api.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+import org.jooq.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every statement executed by jOOQ, tagged with the repository method that executed it:
+ * <ul>
+ *     <li>{@code gocards.sql.execution} - execution time, excluding fetching; its count is the number of statements,
+ *     a batch counting as one</li>
+ *     <li>{@code gocards.sql.rows} - rows fetched per statement</li>
+ *     <li>{@code gocards.sql.bound.bytes} - approximate size of the bind values per statement</li>
+ * </ul>
+ * The same numbers are added to the {@link SqlStats} of the HTTP request, if any.
+ */
+@Component
+public class SqlMetricsListener implements ExecuteListener {
+
+    private static final String SAMPLE = SqlMetricsListener.class.getName() + ".sample";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public SqlMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    private record Meters(
+            Timer execution,
+            DistributionSummary rows,
+            DistributionSummary boundBytes
+    ) {
+    }
+
+    /**
+     * Kept in the execute context, so that rows fetched lazily on another thread are still attributed.
+     */
+    private static final class Sample {
+
+        private final SqlStats stats;
+
+        private final Meters meters;
+
+        private final long boundBytes;
+
+        private long start;
+
+        private long rows;
+
+        private Sample(SqlStats stats, Meters meters, long boundBytes) {
+            this.stats = stats;
+            this.meters = meters;
+            this.boundBytes = boundBytes;
+        }
+    }
+
+    @Override
+    public void executeStart(ExecuteContext ctx) {
+        var sample = new Sample(SqlStats.current(), meters(RepositoryMethodInterceptor.current()), boundBytes(ctx));
+        ctx.data(SAMPLE, sample);
+        sample.start = System.nanoTime();
+    }
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        if (ctx.data(SAMPLE) instanceof Sample sample) {
+            long nanos = System.nanoTime() - sample.start;
+            sample.meters.execution().record(nanos, TimeUnit.NANOSECONDS);
+            sample.meters.boundBytes().record(sample.boundBytes);
+            if (sample.stats != null) {
+                sample.stats.addStatement(sample.boundBytes, nanos);
+            }
+        }
+    }
+
+    @Override
+    public void recordEnd(ExecuteContext ctx) {
+        if (ctx.data(SAMPLE) instanceof Sample sample) {
+            sample.rows++;
+            if (sample.stats != null) {
+                sample.stats.addRow();
+            }
+        }
+    }
+
+    @Override
+    public void end(ExecuteContext ctx) {
+        if (ctx.data(SAMPLE) instanceof Sample sample) {
+            sample.meters.rows().record(sample.rows);
+        }
+    }
+
+    private Meters meters(String method) {
+        return meters.computeIfAbsent(method, it -> new Meters(
+                Timer.builder("gocards.sql.execution")
+                        .description("Execution time of the SQL statements, excluding fetching")
+                        .tag("method", it)
+                        .register(meterRegistry),
+                DistributionSummary.builder("gocards.sql.rows")
+                        .description("Rows fetched per SQL statement")
+                        .tag("method", it)
+                        .register(meterRegistry),
+                DistributionSummary.builder("gocards.sql.bound.bytes")
+                        .description("Approximate size of the bind values per SQL statement")
+                        .baseUnit("bytes")
+                        .tag("method", it)
+                        .register(meterRegistry)
+        ));
+    }
+
+    private static long boundBytes(ExecuteContext ctx) {
+        if (ctx.query() != null) {
+            return boundBytes(ctx.query().getBindValues());
+        }
+        long bytes = 0;
+        for (Query query : ctx.batchQueries()) {
+            bytes += boundBytes(query.getBindValues());
+        }
+        return bytes;
+    }
+
+    /**
+     * Strings are counted by their length, which matches their UTF-8 size for ASCII content.
+     */
+    private static long boundBytes(Object value) {
+        return switch (value) {
+            case null -> 0;
+            case String string -> string.length();
+            case byte[] bytes -> bytes.length;
+            case Object[] array -> {
+                long bytes = 0;
+                for (Object element : array) {
+                    bytes += boundBytes(element);
+                }
+                yield bytes;
+            }
+            case Collection<?> collection -> {
+                long bytes = 0;
+                for (Object element : collection) {
+                    bytes += boundBytes(element);
+                }
+                yield bytes;
+            }
+            default -> 8;
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package pl.gocards.api.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the {@link SqlStats} of each HTTP request and records them per endpoint as
+ * {@code gocards.http.sql.statements}, {@code gocards.http.sql.rows}, {@code gocards.http.sql.bound.bytes}
+ * and {@code gocards.http.sql.time}.
+ * <p>
+ * With {@code gocards.sql-metrics.debug-header=true} the stats are also returned in a {@code Server-Timing} header.
+ * The header is written when the response is committed, so rows streamed after that are not included.
+ */
+@Component
+public class SqlMetricsWebFilter implements WebFilter {
+
+    static final String SERVER_TIMING = "Server-Timing";
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean debugHeader;
+
+    public SqlMetricsWebFilter(
+            MeterRegistry meterRegistry,
+            @Value("${gocards.sql-metrics.debug-header:false}") boolean debugHeader
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.debugHeader = debugHeader;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var stats = new SqlStats();
+        if (debugHeader) {
+            var response = exchange.getResponse();
+            response.beforeCommit(() -> {
+                response.getHeaders().add(SERVER_TIMING, stats.toServerTiming());
+                return Mono.empty();
+            });
+        }
+
+        return chain.filter(exchange)
+                .contextWrite(stats::writeTo)
+                .doFinally(signal -> record(exchange, stats));
+    }
+
+    private void record(ServerWebExchange exchange, SqlStats stats) {
+        PathPattern pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern == null) {
+            return;
+        }
+        var tags = Tags.of(
+                "method", exchange.getRequest().getMethod().name(),
+                "uri", pattern.getPatternString()
+        );
+
+        DistributionSummary.builder("gocards.http.sql.statements")
+                .description("SQL statements executed per HTTP request")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.statements());
+        DistributionSummary.builder("gocards.http.sql.rows")
+                .description("Rows fetched per HTTP request")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.rows());
+        DistributionSummary.builder("gocards.http.sql.bound.bytes")
+                .description("Approximate size of the SQL bind values per HTTP request")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.boundBytes());
+        Timer.builder("gocards.http.sql.time")
+                .description("SQL execution time per HTTP request, excluding fetching")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.executionNanos(), TimeUnit.NANOSECONDS);
+    }
+}
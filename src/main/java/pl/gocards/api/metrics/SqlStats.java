@@ -0,0 +1,127 @@
+package pl.gocards.api.metrics;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SQL executed on behalf of one HTTP request.
+ * <p>
+ * Created by {@link SqlMetricsWebFilter} and carried in the Reactor context of the request.
+ * {@link pl.gocards.api.config.BlockingExecutor} binds it to the thread that runs the blocking call,
+ * where {@link SqlMetricsListener} picks it up.
+ */
+public class SqlStats {
+
+    private static final ThreadLocal<SqlStats> CURRENT = new ThreadLocal<>();
+
+    private final LongAdder statements = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private final LongAdder boundBytes = new LongAdder();
+
+    private final LongAdder executionNanos = new LongAdder();
+
+    static SqlStats current() {
+        return CURRENT.get();
+    }
+
+    public static SqlStats from(ContextView context) {
+        return context.getOrDefault(SqlStats.class, null);
+    }
+
+    public Context writeTo(Context context) {
+        return context.put(SqlStats.class, this);
+    }
+
+    /**
+     * Runs the task with the stats bound to the current thread.
+     */
+    public static <T> T call(SqlStats stats, Callable<T> task) throws Exception {
+        if (stats == null) {
+            return task.call();
+        }
+        var previous = CURRENT.get();
+        CURRENT.set(stats);
+        try {
+            return task.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Binds the stats to the thread that subscribes to the source. Statements executed lazily on subscription,
+     * such as opening a cursor for {@code Flux.fromStream}, are attributed to the stats; rows fetched later from
+     * that cursor are attributed by {@link SqlMetricsListener} regardless of the thread.
+     */
+    public static <T> Flux<T> bind(SqlStats stats, Publisher<T> source) {
+        if (stats == null) {
+            return Flux.from(source);
+        }
+        return Flux.from(subscriber -> {
+            var previous = CURRENT.get();
+            CURRENT.set(stats);
+            try {
+                source.subscribe(subscriber);
+            } finally {
+                restore(previous);
+            }
+        });
+    }
+
+    private static void restore(SqlStats previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    void addStatement(long boundBytes, long executionNanos) {
+        this.statements.increment();
+        this.boundBytes.add(boundBytes);
+        this.executionNanos.add(executionNanos);
+    }
+
+    void addRow() {
+        rows.increment();
+    }
+
+    public long statements() {
+        return statements.sum();
+    }
+
+    public long rows() {
+        return rows.sum();
+    }
+
+    public long boundBytes() {
+        return boundBytes.sum();
+    }
+
+    public long executionNanos() {
+        return executionNanos.sum();
+    }
+
+    /**
+     * @return a {@code Server-Timing} header value, which browsers show next to the request timings
+     */
+    String toServerTiming() {
+        return String.format(
+                Locale.ROOT,
+                "sql;dur=%.3f;desc=\"%d statements, %d rows, %d bytes bound\"",
+                executionNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1),
+                statements(),
+                rows(),
+                boundBytes()
+        );
+    }
+}
@@ -0,0 +1,15 @@
+package pl.gocards.api.service;
+
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardDiff;
+
+import java.util.List;
+
+public interface CardDiffEngine {
+
+    /**
+     * @param existingCards the cards currently stored in the deck
+     * @param cards         the requested state of the deck, with ordinals assigned
+     */
+    CardDiff diff(List<Card> existingCards, List<Card> cards);
+}
@@ -1,14 +1,43 @@
 package pl.gocards.api.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardChanges;
+import pl.gocards.api.entity.CardDiff;
+import pl.gocards.api.entity.CardFront;
+import pl.gocards.api.entity.CardPatch;
+import pl.gocards.api.entity.CardReplacement;
+import pl.gocards.api.entity.CardReplacementResult;
+import pl.gocards.api.entity.Deck;
+import pl.gocards.api.entity.DeckSnapshot;
+import pl.gocards.api.entity.DeckSync;
+import pl.gocards.api.exception.CardNotFoundException;
 import pl.gocards.api.exception.DeckNotFoundException;
+import pl.gocards.api.exception.DeckVersionConflictException;
+import pl.gocards.api.exception.DuplicateCardIdException;
 import pl.gocards.api.jooq.CardRepository;
 import pl.gocards.api.jooq.DeckRepository;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 public class CardService {
@@ -17,38 +46,468 @@ public class CardService {
 
     private final CardRepository cardRepository;
 
+    private final CardDiffEngine cardDiffEngine;
+
+    private final DeckCache deckCache;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int updateAttempts;
+
+    private final Counter retries;
+
     public CardService(
             DeckRepository deckRepository,
-            CardRepository cardRepository
+            CardRepository cardRepository,
+            CardDiffEngine cardDiffEngine,
+            DeckCache deckCache,
+            TransactionTemplate transactionTemplate,
+            @Value("${gocards.cards.update-attempts:3}") int updateAttempts,
+            MeterRegistry meterRegistry
     ) {
         this.deckRepository = deckRepository;
         this.cardRepository = cardRepository;
+        this.cardDiffEngine = cardDiffEngine;
+        this.deckCache = deckCache;
+        this.transactionTemplate = transactionTemplate;
+        this.updateAttempts = updateAttempts;
+        this.retries = Counter.builder("gocards.cards.write.retries")
+                .description("Deck writes run again after losing the compare-and-set of the deck version")
+                .register(meterRegistry);
     }
 
-    @Transactional
-    public void update(
+    public DeckSnapshot update(
             String deckId,
             List<Card> cards
     ) {
-       this.update(deckId, cards, null);
+        return this.update(deckId, cards, Set.of(), null, null);
+    }
+
+    /**
+     * Replaces the cards of the deck. The deck and then its cards are read without locks and the diff is computed
+     * from them; the diff is written only if {@link DeckRepository#compareAndSetVersion} confirms that the deck
+     * has not changed since it was read. The returned snapshot is built from those reads and the applied diff
+     * instead of reading the deck again.
+     * <p>
+     * The cards are stored in the given order; their ordinals are ignored and assigned by {@link SparseOrdinals}.
+     *
+     * @param expectedCardIds IDs the client sent as existing cards; each of them must belong to the deck
+     * @param baseVersion     the deck version the client based the cards on. If the deck has moved on,
+     *                        {@link DeckVersionConflictException} is thrown. Without it, a concurrent write is
+     *                        rebased on: the diff is computed again against the latest cards, up to
+     *                        {@code gocards.cards.update-attempts} times.
+     * @throws DuplicateCardIdException if a card is given more than once
+     */
+    public DeckSnapshot update(
+            String deckId,
+            List<Card> cards,
+            Set<String> expectedCardIds,
+            Integer baseVersion
+    ) {
+        return this.update(deckId, cards, expectedCardIds, baseVersion, null);
+    }
+
+    DeckSnapshot update(
+            String deckId,
+            List<Card> cards,
+            Runnable finalizeFn
+    ) {
+        return this.update(deckId, cards, Set.of(), null, finalizeFn);
     }
 
-    @Transactional
-    void update(
+    private DeckSnapshot update(
             String deckId,
             List<Card> cards,
+            Set<String> expectedCardIds,
+            Integer baseVersion,
             Runnable finalizeFn
     ) {
-        LocalDateTime now = LocalDateTime.now();
-        var exists = deckRepository.existsWithUpdateLock(deckId);
-        if (!exists) {
+        validateCardIdsUnique(cards);
+        return withRetry(deckId, baseVersion == null, () -> tryUpdate(deckId, cards, expectedCardIds, baseVersion, finalizeFn));
+    }
+
+    /**
+     * @return {@code null} if the deck was modified after it was read; nothing has been written then
+     */
+    private DeckSnapshot tryUpdate(
+            String deckId,
+            List<Card> cards,
+            Set<String> expectedCardIds,
+            Integer baseVersion,
+            Runnable finalizeFn
+    ) {
+        var deck = deckRepository.find(deckId);
+        if (deck == null) {
+            throw new DeckNotFoundException(deckId);
+        }
+        if (baseVersion != null && !baseVersion.equals(deck.version())) {
+            throw new DeckVersionConflictException(deckId);
+        }
+        return tryWrite(readSnapshot(deck), cards, expectedCardIds, finalizeFn);
+    }
+
+    /**
+     * Replaces the cards of the deck with each replacement in turn, in one transaction, so that writers queued on
+     * the same deck read it and compete for its version once instead of once each. Every replacement is validated
+     * and diffed against the cards the previous one left and gets a version of its own; a rejected replacement
+     * leaves the deck as it was for the next. A concurrent write is rebased on like
+     * {@link #update(String, List, Set, Integer)} without a base version.
+     *
+     * @return the outcome of each replacement, in order
+     * @throws DeckNotFoundException if the deck does not exist; nothing is written then
+     */
+    public List<CardReplacementResult> updateAll(String deckId, List<CardReplacement> replacements) {
+        return withRetry(deckId, true, () -> tryUpdateAll(deckId, replacements));
+    }
+
+    private List<CardReplacementResult> tryUpdateAll(String deckId, List<CardReplacement> replacements) {
+        var deck = deckRepository.find(deckId);
+        if (deck == null) {
+            throw new DeckNotFoundException(deckId);
+        }
+        var snapshot = readSnapshot(deck);
+
+        List<CardReplacementResult> results = new ArrayList<>();
+        for (var replacement : replacements) {
+            DeckSnapshot written;
+            try {
+                validateCardIdsUnique(replacement.cards());
+                written = tryWrite(snapshot, replacement.cards(), replacement.expectedCardIds(), null);
+            } catch (DuplicateCardIdException | CardNotFoundException e) {
+                results.add(new CardReplacementResult(null, e));
+                continue;
+            }
+            // Only a compare-and-set before the first write can be lost; later ones run on the version it wrote.
+            if (written == null) {
+                return null;
+            }
+            results.add(new CardReplacementResult(written, null));
+            snapshot = written;
+        }
+        return results;
+    }
+
+    private DeckSnapshot readSnapshot(Deck deck) {
+        try (var cards = cardRepository.findByDeck(deck.id())) {
+            return new DeckSnapshot(deck, cards.toList());
+        }
+    }
+
+    /**
+     * @return {@code null} if the deck was modified after the snapshot was read; nothing has been written then
+     */
+    private DeckSnapshot tryWrite(
+            DeckSnapshot snapshot,
+            List<Card> cards,
+            Set<String> expectedCardIds,
+            Runnable finalizeFn
+    ) {
+        var deck = snapshot.deck();
+        validateCardIdsExist(snapshot, expectedCardIds);
+
+        var requested = SparseOrdinals.assign(snapshot.cards(), cards);
+        var diff = cardDiffEngine.diff(snapshot.cards(), requested);
+        if (diff.isEmpty()) {
+            return new DeckSnapshot(deck, mergeCards(snapshot.cards(), requested, diff, deck.updatedAt()));
+        }
+
+        var now = nextUpdatedAt(deck);
+        if (!deckRepository.compareAndSetVersion(deck.id(), deck.version(), now)) {
+            return null;
+        }
+        cardRepository.apply(deck.id(), diff, now);
+        if (finalizeFn != null) finalizeFn.run();
+        deckCache.evictAfterCommit(deck.id());
+
+        var updatedDeck = new Deck(deck.id(), deck.name(), deck.createdAt(), Timestamp.valueOf(now), deck.version() + 1);
+        return new DeckSnapshot(updatedDeck, mergeCards(snapshot.cards(), requested, diff, Timestamp.valueOf(now)));
+    }
+
+    /**
+     * Runs each attempt in its own transaction. An attempt that returns {@code null} lost the compare-and-set
+     * before writing anything, so it is safe to run again.
+     *
+     * @param rebase whether to run the attempt again after a concurrent write instead of failing
+     */
+    private <T> T withRetry(String deckId, boolean rebase, Supplier<T> attempt) {
+        for (int attempts = 1; ; attempts++) {
+            var result = transactionTemplate.execute(status -> attempt.get());
+            if (result != null) {
+                return result;
+            }
+            if (!rebase || attempts >= updateAttempts) {
+                throw new DeckVersionConflictException(deckId);
+            }
+            retries.increment();
+        }
+    }
+
+    /**
+     * Kept after the write the deck was read at; the compare-and-set of the version rejects the value if another
+     * writer committed in between, so {@code updated_at} never goes backwards between writers of the same deck and
+     * can serve as the change feed cursor.
+     */
+    private static LocalDateTime nextUpdatedAt(Deck deck) {
+        var now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        var previous = deck.updatedAt().toLocalDateTime();
+        return now.isAfter(previous) ? now : previous.plus(1, ChronoUnit.MICROS);
+    }
+
+    private static void validateCardIdsUnique(List<Card> cards) {
+        Set<String> cardIds = new HashSet<>();
+        Set<String> duplicateCardIds = new LinkedHashSet<>();
+        cards.stream()
+                .map(Card::id)
+                .filter(cardId -> cardId != null && !cardIds.add(cardId))
+                .forEach(duplicateCardIds::add);
+
+        if (!duplicateCardIds.isEmpty()) {
+            throw new DuplicateCardIdException(duplicateCardIds.toString());
+        }
+    }
+
+    /**
+     * A card may be updated at most once, and not deleted by the same patch: the deletion runs first, so the
+     * update would write a card that no longer exists.
+     */
+    private static void validateCardIdsUnique(CardPatch patch) {
+        validateCardIdsUnique(patch.updates());
+
+        List<String> deletedAndUpdatedCardIds = patch.updates().stream()
+                .map(Card::id)
+                .filter(patch.deletions()::contains)
+                .toList();
+
+        if (!deletedAndUpdatedCardIds.isEmpty()) {
+            throw new DuplicateCardIdException(deletedAndUpdatedCardIds.toString());
+        }
+    }
+
+    private void validateCardIdsExist(DeckSnapshot snapshot, Set<String> expectedCardIds) {
+        if (expectedCardIds.isEmpty()) {
+            return;
+        }
+
+        Set<String> existingCardIds = snapshot.cards().stream()
+                .map(Card::id)
+                .collect(Collectors.toSet());
+
+        List<String> invalidCardIds = expectedCardIds.stream()
+                .filter(cardId -> !existingCardIds.contains(cardId))
+                .toList();
+
+        if (!invalidCardIds.isEmpty()) {
+            throw new CardNotFoundException(invalidCardIds.toString());
+        }
+    }
+
+    /**
+     * @return the requested cards as they are stored after applying the diff, in the requested order
+     */
+    private List<Card> mergeCards(
+            List<Card> existingCards,
+            List<Card> cards,
+            CardDiff diff,
+            Timestamp now
+    ) {
+        Map<String, Card> existingById = existingCards.stream()
+                .collect(Collectors.toMap(Card::id, Function.identity()));
+
+        Set<String> changedCardIds = new HashSet<>();
+        diff.updates().forEach(card -> changedCardIds.add(card.id()));
+        diff.moves().forEach(card -> changedCardIds.add(card.id()));
+
+        return cards.stream()
+                .map(card -> {
+                    var existing = existingById.get(card.id());
+                    if (existing == null) {
+                        return toStored(card, now, now);
+                    } else if (changedCardIds.contains(card.id())) {
+                        return toStored(card, existing.createdAt(), now);
+                    } else {
+                        return existing;
+                    }
+                })
+                .toList();
+    }
+
+    private static Card toStored(Card card, Timestamp createdAt, Timestamp updatedAt) {
+        return new Card(
+                card.id(),
+                card.ordinal(),
+                new CardFront(card.front() == null ? null : card.front().term()),
+                new CardBack(card.back() == null ? null : card.back().definition()),
+                createdAt,
+                updatedAt
+        );
+    }
+
+    /**
+     * The deck version is compared and set before the patch is written, so the row lock is held while writing
+     * and a concurrent writer is rebased on like in {@link #update(String, List)}. The card IDs are validated
+     * before that, so a rejected patch neither bumps the version nor writes anything.
+     *
+     * @return the cards written by the patch, ordered by ordinal; deleted cards are not included.
+     * @throws DuplicateCardIdException if a card is updated more than once
+     */
+    public List<Card> patch(
+            String deckId,
+            CardPatch patch
+    ) {
+        validateCardIdsUnique(patch);
+        return withRetry(deckId, true, () -> tryPatch(deckId, patch));
+    }
+
+    private List<Card> tryPatch(String deckId, CardPatch patch) {
+        var deck = deckRepository.find(deckId);
+        if (deck == null) {
             throw new DeckNotFoundException(deckId);
         }
+        if (patch.creations().isEmpty() && patch.updates().isEmpty()
+                && patch.deletions().isEmpty() && patch.moves().isEmpty()) {
+            return List.of();
+        }
+        validateCardIdsExist(deckId, patch);
+
+        var now = nextUpdatedAt(deck);
+        if (!deckRepository.compareAndSetVersion(deckId, deck.version(), now)) {
+            return null;
+        }
+
+        var changedCardIds = cardRepository.patch(deckId, patch, now);
+        deckCache.evictAfterCommit(deckId);
+
+        try (var cards = cardRepository.findByIds(deckId, changedCardIds)) {
+            return cards.toList();
+        }
+    }
+
+    /**
+     * Appends the cards to the end of the deck in one transaction. Large imports call this once per chunk,
+     * so a failure keeps the chunks committed before it.
+     *
+     * @return the number of cards created
+     */
+    public int append(String deckId, List<Card> cards) {
+        return withRetry(deckId, true, () -> tryAppend(deckId, cards));
+    }
+
+    private Integer tryAppend(String deckId, List<Card> cards) {
+        var deck = deckRepository.find(deckId);
+        if (deck == null) {
+            throw new DeckNotFoundException(deckId);
+        }
+        if (cards.isEmpty()) {
+            return 0;
+        }
+        var now = nextUpdatedAt(deck);
+        if (!deckRepository.compareAndSetVersion(deckId, deck.version(), now)) {
+            return null;
+        }
+
+        cardRepository.append(deckId, cards, now);
+        deckCache.evictAfterCommit(deckId);
+
+        return cards.size();
+    }
+
+    /**
+     * Takes {@code updated_at} like card writes do, so a rename never moves the change feed cursor backwards, and
+     * rebases on a concurrent write like {@link #update(String, List)}.
+     *
+     * @return the renamed deck
+     */
+    public Deck rename(String deckId, String name) {
+        return withRetry(deckId, true, () -> tryRename(deckId, name));
+    }
+
+    private Deck tryRename(String deckId, String name) {
+        var deck = deckRepository.find(deckId);
+        if (deck == null) {
+            throw new DeckNotFoundException(deckId);
+        }
+        var now = nextUpdatedAt(deck);
+        if (!deckRepository.rename(deckId, name, deck.version(), now)) {
+            return null;
+        }
+        deckCache.evictAfterCommit(deckId);
+
+        return new Deck(deck.id(), name, deck.createdAt(), Timestamp.valueOf(now), deck.version() + 1);
+    }
+
+    /**
+     * Reads the deck and its changes from one snapshot, so that the returned cursor covers exactly the
+     * returned changes.
+     *
+     * @param since the cursor of the previous sync, or {@code null} for all cards
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public CardChanges changes(String deckId, Timestamp since) {
+        var deck = deckRepository.find(deckId);
+        if (deck == null) {
+            throw new DeckNotFoundException(deckId);
+        }
+
+        if (since == null) {
+            try (var cards = cardRepository.findByDeck(deckId)) {
+                return new CardChanges(deck.updatedAt(), cards.toList(), List.of());
+            }
+        }
+
+        try (var cards = cardRepository.findUpdatedSince(deckId, since.toLocalDateTime())) {
+            return new CardChanges(
+                    deck.updatedAt(),
+                    cards.toList(),
+                    cardRepository.findDeletedSince(deckId, since.toLocalDateTime())
+            );
+        }
+    }
+
+    /**
+     * Reads the requested decks with one query and the cards of every stale deck with another, from one snapshot,
+     * so that the cost of syncing many decks does not grow with their number in round trips.
+     *
+     * @param knownVersions the version of each deck the client has, by deck ID; {@code null} if it has none
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public DeckSync sync(Map<String, Integer> knownVersions) {
+        var decks = deckRepository.findByIds(knownVersions.keySet());
+        var staleDeckIds = decks.stream()
+                .filter(deck -> !deck.version().equals(knownVersions.get(deck.id())))
+                .map(Deck::id)
+                .toList();
+
+        Map<String, List<Card>> cards = staleDeckIds.isEmpty()
+                ? new HashMap<>()
+                : cardRepository.findByDecks(staleDeckIds);
+        staleDeckIds.forEach(deckId -> cards.putIfAbsent(deckId, List.of()));
+
+        return new DeckSync(decks, cards);
+    }
+
+    private void validateCardIdsExist(String deckId, CardPatch patch) {
+        Set<String> referencedCardIds = new HashSet<>(patch.deletions());
+        patch.updates().forEach(card -> referencedCardIds.add(card.id()));
+
+        Set<String> movedCardIds = new HashSet<>();
+        patch.moves().forEach(move -> {
+            movedCardIds.add(move.cardId());
+            if (move.afterCardId() != null) {
+                movedCardIds.add(move.afterCardId());
+            }
+        });
+        patch.creations().forEach(card -> movedCardIds.remove(card.id()));
+        referencedCardIds.addAll(movedCardIds);
+
+        var existingCardIds = cardRepository.findIdsByDeck(deckId, referencedCardIds);
+
+        List<String> invalidCardIds = referencedCardIds.stream()
+                .filter(cardId -> !existingCardIds.contains(cardId)
+                        || movedCardIds.contains(cardId) && patch.deletions().contains(cardId))
+                .toList();
 
-        var countModifications = cardRepository.update(deckId, cards, now, finalizeFn);
-        var isModified = countModifications > 0;
-        if (isModified) {
-            deckRepository.updateUpdatedAt(deckId, now);
+        if (!invalidCardIds.isEmpty()) {
+            throw new CardNotFoundException(invalidCardIds.toString());
         }
     }
 }
@@ -0,0 +1,117 @@
+package pl.gocards.api.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.Deck;
+import pl.gocards.api.jooq.CardRepository;
+import pl.gocards.api.jooq.DeckRepository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Caches decks by ID in front of {@link DeckRepository#find(String)}, and their cards by deck ID and
+ * {@code updated_at} in front of {@link CardRepository#findByDeck(String)}.
+ * <p>
+ * Every write to a deck or its cards must call {@link #evictAfterCommit(String)}. The next read then loads the
+ * new {@code updated_at}, so the cards cached for the previous one are never returned again.
+ * Hit, miss and eviction counts are exposed as the {@code cache.*} metrics with {@code cache=decks|cards}.
+ * <p>
+ * Eviction reaches only the cache of the instance that wrote. Other instances keep serving their entries until
+ * they expire {@code gocards.cache.expire-after-write} after they were loaded, which bounds how stale a deck
+ * written through another instance can be, and drops the cards cached for an {@code updated_at} no longer read.
+ */
+@Service
+public class DeckCache {
+
+    private final DeckRepository deckRepository;
+
+    private final CardRepository cardRepository;
+
+    private final Cache<String, Deck> decks;
+
+    private final Cache<DeckVersion, List<Card>> cards;
+
+    private record DeckVersion(
+            String deckId,
+            Timestamp updatedAt
+    ) {
+    }
+
+    public DeckCache(
+            DeckRepository deckRepository,
+            CardRepository cardRepository,
+            @Value("${gocards.cache.decks.maximum-size:10000}") long decksMaximumSize,
+            @Value("${gocards.cache.cards.maximum-weight:200000}") long cardsMaximumWeight,
+            @Value("${gocards.cache.expire-after-write:5s}") Duration expireAfterWrite,
+            MeterRegistry meterRegistry
+    ) {
+        this.deckRepository = deckRepository;
+        this.cardRepository = cardRepository;
+        this.decks = Caffeine.newBuilder()
+                .maximumSize(decksMaximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.cards = Caffeine.newBuilder()
+                .maximumWeight(cardsMaximumWeight)
+                .<DeckVersion, List<Card>>weigher((deck, cards) -> cards.size() + 1)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, decks, "decks");
+        CaffeineCacheMetrics.monitor(meterRegistry, cards, "cards");
+    }
+
+    /**
+     * @return the deck, or {@code null} if it does not exist; missing decks are not cached
+     */
+    public Deck find(String deckId) {
+        return decks.get(deckId, deckRepository::find);
+    }
+
+    /**
+     * @return the cards of the deck as of {@link Deck#updatedAt()}, ordered by ordinal
+     */
+    public List<Card> findCards(Deck deck) {
+        return cards.get(new DeckVersion(deck.id(), deck.updatedAt()), key -> {
+            try (var stream = cardRepository.findByDeck(key.deckId())) {
+                return stream.toList();
+            }
+        });
+    }
+
+    /**
+     * Evicts the deck once the current transaction commits, or immediately outside a transaction.
+     * <p>
+     * A read that is loading the deck at that moment completes first and is then evicted too,
+     * so an entry read before the commit cannot outlive it.
+     */
+    public void evictAfterCommit(String deckId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(deckId);
+                }
+            });
+        } else {
+            evict(deckId);
+        }
+    }
+
+    private void evict(String deckId) {
+        var deck = decks.asMap().remove(deckId);
+        if (deck != null) {
+            cards.invalidate(new DeckVersion(deckId, deck.updatedAt()));
+        }
+    }
+}
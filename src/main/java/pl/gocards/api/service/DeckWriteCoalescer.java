@@ -0,0 +1,175 @@
+package pl.gocards.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.gocards.api.config.BlockingExecutor;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardReplacement;
+import pl.gocards.api.entity.DeckSnapshot;
+import pl.gocards.api.metrics.SqlStats;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queues card replacements per deck in front of {@link CardService#update}, so that writers of one deck do not
+ * compete for its version, and merges the replacements queued behind a running write into one transaction.
+ * <p>
+ * While a write of a deck is running, further replacements of that deck wait in its queue. When the write
+ * completes, all of them are written by {@link CardService#updateAll} with one read of the deck and in one
+ * transaction, but in the order they were submitted and each with its own validation, so every caller receives
+ * the snapshot of its own replacement or the exception that rejected it. Decks are written independently of each
+ * other.
+ * <p>
+ * No thread waits for a write: each runs through {@link BlockingExecutor}, with the {@link SqlStats} of the
+ * request whose replacement comes first in it, and the next one is started when it completes.
+ * <p>
+ * Disabled by default ({@code gocards.cards.coalesce.enabled}); then every call runs its own transaction through
+ * {@link BlockingExecutor}. Queue depth and replacements per transaction are exposed as the
+ * {@code gocards.cards.coalesce.*} metrics.
+ */
+@Service
+public class DeckWriteCoalescer {
+
+    private final CardService cardService;
+
+    private final BlockingExecutor blockingExecutor;
+
+    private final boolean enabled;
+
+    /**
+     * Replacements waiting for the running write of a deck, by deck ID; a deck is present while a write of it is
+     * running. Guarded by {@code this}.
+     */
+    private final Map<String, List<Pending>> queued = new HashMap<>();
+
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final Counter requests;
+
+    private final DistributionSummary merged;
+
+    public DeckWriteCoalescer(
+            CardService cardService,
+            BlockingExecutor blockingExecutor,
+            @Value("${gocards.cards.coalesce.enabled:false}") boolean enabled,
+            MeterRegistry meterRegistry
+    ) {
+        this.cardService = cardService;
+        this.blockingExecutor = blockingExecutor;
+        this.enabled = enabled;
+
+        meterRegistry.gauge("gocards.cards.coalesce.queue.depth", depth);
+        this.requests = Counter.builder("gocards.cards.coalesce.requests")
+                .description("Card replacements submitted to the write coalescer")
+                .register(meterRegistry);
+        this.merged = DistributionSummary.builder("gocards.cards.coalesce.merged")
+                .description("Card replacements written by one transaction")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Replaces the cards of the deck like {@link CardService#update(String, List, Set, Integer)}.
+     *
+     * @param baseVersion writes with a base version are never queued, since a queued write could not honour it
+     */
+    public Mono<DeckSnapshot> update(
+            String deckId,
+            List<Card> cards,
+            Set<String> expectedCardIds,
+            Integer baseVersion
+    ) {
+        if (!enabled || baseVersion != null) {
+            return blockingExecutor.mono(() -> cardService.update(deckId, cards, expectedCardIds, baseVersion));
+        }
+
+        return Mono.deferContextual(context -> Mono.fromFuture(
+                submit(deckId, new Pending(new CardReplacement(cards, expectedCardIds), SqlStats.from(context)))
+        ));
+    }
+
+    private CompletableFuture<DeckSnapshot> submit(String deckId, Pending pending) {
+        requests.increment();
+
+        synchronized (this) {
+            var waiting = queued.get(deckId);
+            if (waiting != null) {
+                depth.incrementAndGet();
+                waiting.add(pending);
+                return pending.caller;
+            }
+            queued.put(deckId, new ArrayList<>());
+        }
+        write(deckId, List.of(pending));
+        return pending.caller;
+    }
+
+    private void writeNext(String deckId) {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = queued.get(deckId);
+            if (batch.isEmpty()) {
+                queued.remove(deckId);
+                return;
+            }
+            queued.put(deckId, new ArrayList<>());
+            depth.addAndGet(-batch.size());
+        }
+        write(deckId, batch);
+    }
+
+    private void write(String deckId, List<Pending> batch) {
+        merged.record(batch.size());
+        var sqlStats = batch.getFirst().sqlStats;
+
+        blockingExecutor.mono(() -> {
+                    complete(deckId, batch);
+                    return batch;
+                })
+                .contextWrite(context -> sqlStats == null ? context : sqlStats.writeTo(context))
+                .doFinally(signal -> writeNext(deckId))
+                .subscribe(null, e -> batch.forEach(it -> it.caller.completeExceptionally(e)));
+    }
+
+    /**
+     * Catches everything the write throws, errors included, since a caller left uncompleted would wait forever.
+     */
+    private void complete(String deckId, List<Pending> batch) {
+        try {
+            var results = cardService.updateAll(deckId, batch.stream().map(it -> it.replacement).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                var result = results.get(i);
+                if (result.rejection() != null) {
+                    batch.get(i).caller.completeExceptionally(result.rejection());
+                } else {
+                    batch.get(i).caller.complete(result.snapshot());
+                }
+            }
+        } catch (Throwable e) {
+            batch.forEach(it -> it.caller.completeExceptionally(e));
+        }
+    }
+
+    private static class Pending {
+
+        private final CardReplacement replacement;
+
+        private final SqlStats sqlStats;
+
+        private final CompletableFuture<DeckSnapshot> caller = new CompletableFuture<>();
+
+        Pending(CardReplacement replacement, SqlStats sqlStats) {
+            this.replacement = replacement;
+            this.sqlStats = sqlStats;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package pl.gocards.api.service;
+
+import org.springframework.stereotype.Component;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardDiff;
+import pl.gocards.api.entity.CardFront;
+
+import java.util.*;
+
+/**
+ * Indexes the existing cards by ID and walks the requested cards once, so a diff costs O(n) instead of
+ * a linear search per card.
+ */
+@Component
+public class HashCardDiffEngine implements CardDiffEngine {
+
+    @Override
+    public CardDiff diff(List<Card> existingCards, List<Card> cards) {
+        Map<String, Card> existingById = new LinkedHashMap<>(existingCards.size() * 4 / 3 + 1);
+        existingCards.forEach(card -> existingById.put(card.id(), card));
+
+        List<Card> creations = new ArrayList<>();
+        List<Card> updates = new ArrayList<>();
+        List<Card> moves = new ArrayList<>();
+
+        for (Card card : cards) {
+            var existing = existingById.remove(card.id());
+            if (existing == null) {
+                creations.add(card);
+                continue;
+            }
+            if (!Objects.equals(term(card.front()), term(existing.front()))
+                    || !Objects.equals(definition(card.back()), definition(existing.back()))) {
+                updates.add(card);
+            }
+            if (!Objects.equals(card.ordinal(), existing.ordinal())) {
+                moves.add(card);
+            }
+        }
+
+        return new CardDiff(creations, updates, moves, List.copyOf(existingById.keySet()));
+    }
+
+    private static String term(CardFront front) {
+        return front == null ? null : front.term();
+    }
+
+    private static String definition(CardBack back) {
+        return back == null ? null : back.definition();
+    }
+}
@@ -0,0 +1,154 @@
+package pl.gocards.api.service;
+
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.jooq.CardRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns sparse ordinals to the requested order of a deck, so that only the cards that actually moved get
+ * a new ordinal.
+ * <p>
+ * The existing cards that form the longest run already in stored order keep their ordinals. Every other card
+ * gets an ordinal spread between its kept neighbours, or {@link CardRepository#ORDINAL_GAP} past the first
+ * or last kept card. Inserting or moving one card therefore writes one row. Only when two kept neighbours
+ * leave no room is the whole deck renumbered.
+ */
+final class SparseOrdinals {
+
+    private SparseOrdinals() {
+    }
+
+    /**
+     * @param existingCards the cards currently stored in the deck
+     * @param cards         the requested cards in the requested order; their ordinals are ignored
+     * @return the requested cards with ordinals assigned
+     */
+    static List<Card> assign(List<Card> existingCards, List<Card> cards) {
+        Map<String, Integer> existingOrdinals = new HashMap<>(existingCards.size() * 4 / 3 + 1);
+        existingCards.forEach(card -> existingOrdinals.put(card.id(), card.ordinal()));
+
+        var ordinals = new long[cards.size()];
+        var anchors = anchors(cards, existingOrdinals);
+
+        int previous = -1;
+        for (int next = 0; next <= cards.size(); next++) {
+            if (next < cards.size() && !anchors[next]) {
+                continue;
+            }
+            if (next < cards.size()) {
+                ordinals[next] = existingOrdinals.get(cards.get(next).id());
+            }
+            if (!spread(ordinals, previous, next)) {
+                return renumber(cards);
+            }
+            previous = next;
+        }
+
+        var assigned = new ArrayList<Card>(cards.size());
+        for (int i = 0; i < cards.size(); i++) {
+            assigned.add(withOrdinal(cards.get(i), (int) ordinals[i]));
+        }
+        return assigned;
+    }
+
+    /**
+     * Fills {@code ordinals} strictly between the anchors at {@code previous} and {@code next}, either of which
+     * may lie outside the list.
+     *
+     * @return {@code false} if the ordinals do not fit
+     */
+    private static boolean spread(long[] ordinals, int previous, int next) {
+        int count = next - previous - 1;
+        if (count == 0) {
+            return true;
+        }
+        boolean hasLow = previous >= 0;
+        boolean hasHigh = next < ordinals.length;
+        long gap = CardRepository.ORDINAL_GAP;
+
+        long first;
+        long step;
+        if (hasLow && hasHigh) {
+            step = (ordinals[next] - ordinals[previous]) / (count + 1);
+            first = ordinals[previous] + step;
+            if (step < 1) {
+                return false;
+            }
+        } else if (hasLow) {
+            step = gap;
+            first = ordinals[previous] + gap;
+        } else if (hasHigh) {
+            step = gap;
+            first = ordinals[next] - gap * count;
+        } else {
+            step = gap;
+            first = gap;
+        }
+
+        long last = first + step * (count - 1);
+        if (first < Integer.MIN_VALUE || last > Integer.MAX_VALUE) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            ordinals[previous + 1 + i] = first + step * i;
+        }
+        return true;
+    }
+
+    /**
+     * Marks the existing cards that form the longest subsequence whose stored ordinals increase in the requested
+     * order, found in O(n log n).
+     */
+    private static boolean[] anchors(List<Card> cards, Map<String, Integer> existingOrdinals) {
+        // tails[k]: index of the smallest last ordinal of an increasing subsequence of length k + 1
+        var tails = new int[cards.size()];
+        var predecessors = new int[cards.size()];
+        int length = 0;
+
+        for (int i = 0; i < cards.size(); i++) {
+            var ordinal = existingOrdinals.get(cards.get(i).id());
+            if (ordinal == null) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (existingOrdinals.get(cards.get(tails[middle]).id()) < ordinal) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        var anchors = new boolean[cards.size()];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            anchors[i] = true;
+        }
+        return anchors;
+    }
+
+    private static List<Card> renumber(List<Card> cards) {
+        int gap = CardRepository.ordinalGap(cards.size());
+
+        var renumbered = new ArrayList<Card>(cards.size());
+        for (int i = 0; i < cards.size(); i++) {
+            renumbered.add(withOrdinal(cards.get(i), gap * (i + 1)));
+        }
+        return renumbered;
+    }
+
+    private static Card withOrdinal(Card card, int ordinal) {
+        return new Card(card.id(), ordinal, card.front(), card.back(), card.createdAt(), card.updatedAt());
+    }
+}
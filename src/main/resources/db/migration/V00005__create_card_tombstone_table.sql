@@ -0,0 +1,11 @@
+CREATE INDEX IF NOT EXISTS idx_card_deck_id_updated_at ON card (deck_id, updated_at);
+
+CREATE TABLE IF NOT EXISTS card_tombstone
+(
+    card_id VARCHAR(36) NOT NULL,
+    deck_id VARCHAR(36) NOT NULL REFERENCES deck(id),
+    deleted_at TIMESTAMP NOT NULL,
+    CONSTRAINT card_tombstone_pk PRIMARY KEY (card_id)
+);
+
+CREATE INDEX idx_card_tombstone_deck_id_deleted_at ON card_tombstone (deck_id, deleted_at);
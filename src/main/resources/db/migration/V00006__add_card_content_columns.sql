@@ -0,0 +1,15 @@
+ALTER TABLE card
+    ADD COLUMN IF NOT EXISTS term VARCHAR(36),
+    ADD COLUMN IF NOT EXISTS definition VARCHAR(36);
+
+UPDATE card
+SET term = card_front.content
+FROM card_front
+WHERE card_front.card_id = card.id
+  AND card_front.name = 'term';
+
+UPDATE card
+SET definition = card_back.content
+FROM card_back
+WHERE card_back.card_id = card.id
+  AND card_back.name = 'definition';
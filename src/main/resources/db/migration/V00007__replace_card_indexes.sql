@@ -0,0 +1,8 @@
+-- (deck_id) and (id, deck_id, ordinal) are served by the covering index below, (ordinal) alone serves no query.
+DROP INDEX IF EXISTS idx_card_deck_id;
+DROP INDEX IF EXISTS idx_card_ordinal;
+DROP INDEX IF EXISTS idx_card_id_deck_ordinal;
+
+-- Reads the cards of a deck in (ordinal, id) order without a sort, and their IDs with an index-only scan.
+CREATE INDEX IF NOT EXISTS idx_card_deck_id_ordinal_id ON card (deck_id, ordinal, id)
+    INCLUDE (created_at, updated_at, term, definition);
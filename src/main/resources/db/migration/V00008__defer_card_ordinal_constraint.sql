@@ -0,0 +1,6 @@
+-- Checked at commit, so that the ordinals of a deck can be rewritten by a single UPDATE.
+-- Only foreign keys can be made deferrable with ALTER CONSTRAINT, so the constraint is recreated.
+ALTER TABLE card DROP CONSTRAINT card_deck_id_ordinal_key;
+
+ALTER TABLE card
+    ADD CONSTRAINT card_deck_id_ordinal_key UNIQUE (deck_id, ordinal) DEFERRABLE INITIALLY DEFERRED;
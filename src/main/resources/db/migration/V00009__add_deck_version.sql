@@ -0,0 +1,3 @@
+-- Bumped by every write to the deck or its cards; writers compare-and-set it instead of locking the deck row.
+ALTER TABLE deck
+    ADD COLUMN version INTEGER NOT NULL DEFAULT 0;
@@ -0,0 +1,48 @@
+package pl.gocards.api.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlockingExecutorTest {
+
+    @Test
+    public void When_StreamCancelled_Should_CloseItOnBlockingThread() throws Exception {
+        var blockingExecutor = new BlockingExecutor(
+                "bounded-elastic", 1, Duration.ofMillis(20), new SimpleMeterRegistry()
+        );
+        var closedOn = new CompletableFuture<Thread>();
+        var received = new CountDownLatch(1);
+
+        var subscriber = new BaseSubscriber<Integer>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(Integer value) {
+                received.countDown();
+            }
+        };
+        blockingExecutor
+                .flux(() -> Flux.fromStream(() -> Stream.iterate(0, i -> i + 1)
+                        .onClose(() -> closedOn.complete(Thread.currentThread()))))
+                .subscribe(subscriber);
+        assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+
+        subscriber.cancel();
+
+        assertThat(closedOn.get(5, TimeUnit.SECONDS).getName()).startsWith("boundedElastic");
+    }
+}
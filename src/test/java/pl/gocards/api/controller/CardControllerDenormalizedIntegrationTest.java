@@ -0,0 +1,15 @@
+package pl.gocards.api.controller;
+
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs {@link CardControllerIntegrationTest} with the card content stored on the card row only.
+ */
+@AutoConfigureWebTestClient
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"gocards.import.chunk-size=2", "gocards.storage.layout=denormalized"}
+)
+public class CardControllerDenormalizedIntegrationTest extends CardControllerIntegrationTest {
+}
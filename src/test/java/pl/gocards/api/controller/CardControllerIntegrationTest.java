@@ -5,8 +5,18 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.FluxExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import pl.gocards.api.config.SmileCodecConfiguration;
+import pl.gocards.api.controller.model.CardChangesResponse;
+import pl.gocards.api.controller.model.ImportProgressResponse;
+import pl.gocards.api.controller.model.MoveCardRequest;
+import pl.gocards.api.controller.model.PatchCardsRequest;
+import pl.gocards.api.controller.model.SyncDeckRequest;
+import pl.gocards.api.controller.model.SyncDeckResponse;
 import pl.gocards.api.controller.model.UpdateCardRequest;
 import pl.gocards.api.controller.model.UpdateCardResponse;
 import pl.gocards.api.controller.model.DeckRequest;
@@ -14,16 +24,23 @@ import pl.gocards.api.controller.model.DeckResponse;
 import pl.gocards.api.entity.Card;
 import pl.gocards.api.entity.CardBack;
 import pl.gocards.api.entity.CardFront;
+import pl.gocards.api.jooq.CardRepository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @AutoConfigureWebTestClient
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "gocards.import.chunk-size=2"
+)
 public class CardControllerIntegrationTest {
 
     @Autowired
@@ -60,6 +77,312 @@ public class CardControllerIntegrationTest {
 
             assertCardsEqualIgnoringTimestamps(actual, expected);
         }
+
+        @Test
+        public void When_AcceptNdjson_Return_OneCardPerLine() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var actual = webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .accept(MediaType.APPLICATION_NDJSON)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectHeader()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .returnResult(Card.class)
+                    .getResponseBody()
+                    .collectList()
+                    .block();
+
+            var expected = List.of(
+                    createCard(actual.get(0).id(), 1, "term-1", "definition-1"),
+                    createCard(actual.get(1).id(), 2, "term-2", "definition-2")
+            );
+
+            assertCardsEqualIgnoringTimestamps(actual, expected);
+        }
+
+        @Test
+        public void When_ETagMatches_Return_NotModified() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+            var eTag = findCardsETag(deckId);
+
+            webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .ifNoneMatch(eTag)
+                    .exchange()
+                    .expectStatus()
+                    .isNotModified()
+                    .expectBody()
+                    .isEmpty();
+
+            webClient.get()
+                    .uri("/deck/{deckId}", deckId)
+                    .ifNoneMatch(eTag)
+                    .exchange()
+                    .expectStatus()
+                    .isNotModified();
+        }
+
+        @Test
+        public void When_CardsChanged_Return_CardsWithNewETag() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+            var eTag = findCardsETag(deckId);
+
+            updateCards(deckId, INITIAL_CARDS_REQUEST.subList(0, 1));
+
+            var result = webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .ifNoneMatch(eTag)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .returnResult(Card.class);
+
+            assertThat(result.getResponseHeaders().getETag()).isNotEqualTo(eTag);
+            assertThat(result.getResponseBody().collectList().block()).hasSize(1);
+        }
+
+        @Test
+        public void When_AcceptNdjson_Return_OwnETagVaryingByAccept() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+            var eTag = findCardsETag(deckId);
+
+            webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .accept(MediaType.APPLICATION_NDJSON)
+                    .ifNoneMatch(eTag)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectHeader()
+                    .valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .expectHeader()
+                    .value(HttpHeaders.ETAG, it -> assertThat(it).isNotEqualTo(eTag));
+        }
+
+        @Test
+        public void When_JsonPreferredOverNdjson_Return_JsonWithItsETag() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .header(HttpHeaders.ACCEPT, "application/x-ndjson;q=0.5, application/json")
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectHeader()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .expectHeader()
+                    .valueEquals(HttpHeaders.ETAG, findCardsETag(deckId));
+        }
+    }
+
+    @Nested
+    class SmileTests {
+
+        @Test
+        public void When_AcceptSmile_Return_SameCardsAsJson() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var actual = fetchCards(deckId, SmileCodecConfiguration.APPLICATION_SMILE);
+
+            assertThat(actual).isEqualTo(findCards(deckId));
+        }
+
+        @Test
+        public void When_AcceptStreamSmile_Return_SameCardsAsJson() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var actual = fetchCards(deckId, SmileCodecConfiguration.APPLICATION_STREAM_SMILE);
+
+            assertThat(actual).isEqualTo(findCards(deckId));
+        }
+
+        @Test
+        public void When_AcceptSmile_Return_LessThanHalfOfJsonSize() {
+            var deckId = createDeck().id();
+            updateCards(deckId, IntStream.rangeClosed(1, 100)
+                    .mapToObj(i -> createCardRequest(null, "client-id-" + i, "term-" + i, "definition-" + i))
+                    .toList());
+
+            var json = fetchCardBytes(deckId, MediaType.APPLICATION_JSON);
+            var smile = fetchCardBytes(deckId, SmileCodecConfiguration.APPLICATION_SMILE);
+
+            assertThat(smile.length).isLessThan(json.length / 2);
+        }
+
+        @Test
+        public void When_UpdatingWithSmile_Return_SameResponseAsJson() {
+            var deckId = createDeck().id();
+
+            var actual = webClient.put()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .contentType(SmileCodecConfiguration.APPLICATION_SMILE)
+                    .accept(SmileCodecConfiguration.APPLICATION_SMILE)
+                    .bodyValue(INITIAL_CARDS_REQUEST)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectHeader()
+                    .contentType(SmileCodecConfiguration.APPLICATION_SMILE)
+                    .returnResult(UpdateCardResponse.class)
+                    .getResponseBody()
+                    .collectList()
+                    .block();
+
+            assertThat(actual)
+                    .usingRecursiveFieldByFieldElementComparatorIgnoringFields("id", "createdAt", "updatedAt")
+                    .containsExactlyElementsOf(toResponses(INITIAL_CARDS_REQUEST));
+            assertThat(actual).extracting(UpdateCardResponse::id)
+                    .containsExactlyElementsOf(findCards(deckId).stream().map(Card::id).toList());
+        }
+
+        @Test
+        public void When_AcceptSmile_Return_OwnETagVaryingByAccept() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var headers = webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .accept(SmileCodecConfiguration.APPLICATION_SMILE)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectHeader()
+                    .valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .returnResult(Card.class)
+                    .getResponseHeaders();
+
+            assertThat(headers.getETag()).isNotEqualTo(findCardsETag(deckId));
+
+            webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .accept(SmileCodecConfiguration.APPLICATION_SMILE)
+                    .ifNoneMatch(headers.getETag())
+                    .exchange()
+                    .expectStatus()
+                    .isNotModified();
+
+            webClient.put()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.IF_MATCH, headers.getETag())
+                    .bodyValue(INITIAL_CARDS_REQUEST.subList(0, 1))
+                    .exchange()
+                    .expectStatus()
+                    .isOk();
+        }
+
+        @Test
+        public void When_SmileAcceptedWithLowerQuality_Return_JsonWithItsETag() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .header(HttpHeaders.ACCEPT, "application/json, application/x-jackson-smile;q=0.5")
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectHeader()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .expectHeader()
+                    .valueEquals(HttpHeaders.ETAG, findCardsETag(deckId));
+        }
+
+        @Test
+        public void When_UpdatingWithSmile_Return_ETagOfSmileCards() {
+            var deckId = createDeck().id();
+
+            var eTag = webClient.put()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(SmileCodecConfiguration.APPLICATION_SMILE)
+                    .bodyValue(INITIAL_CARDS_REQUEST)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectHeader()
+                    .valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .returnResult(UpdateCardResponse.class)
+                    .getResponseHeaders()
+                    .getETag();
+
+            webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .accept(SmileCodecConfiguration.APPLICATION_SMILE)
+                    .ifNoneMatch(eTag)
+                    .exchange()
+                    .expectStatus()
+                    .isNotModified();
+
+            webClient.get()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .ifNoneMatch(eTag)
+                    .exchange()
+                    .expectStatus()
+                    .isOk();
+        }
+    }
+
+    @Nested
+    class FetchCardPagesTests {
+
+        @Test
+        public void When_PageSizeGiven_Return_PagesUntilLastCard() {
+            var deckId = createDeck().id();
+            updateCards(deckId, List.of(
+                    createCardRequest(null, "client-id-1", "term-1", "definition-1"),
+                    createCardRequest(null, "client-id-2", "term-2", "definition-2"),
+                    createCardRequest(null, "client-id-3", "term-3", "definition-3"),
+                    createCardRequest(null, "client-id-4", "term-4", "definition-4"),
+                    createCardRequest(null, "client-id-5", "term-5", "definition-5")
+            ));
+            var eTag = findCardsETag(deckId);
+
+            List<List<Card>> pages = new ArrayList<>();
+            String pageToken = null;
+            do {
+                var result = fetchCardPage(deckId, 2, pageToken);
+                assertThat(result.getResponseHeaders().getETag()).isEqualTo(eTag);
+                pages.add(result.getResponseBody().collectList().block());
+                pageToken = result.getResponseHeaders().getFirst(CardController.NEXT_PAGE_TOKEN);
+            } while (pageToken != null);
+
+            assertThat(pages).extracting(List::size).containsExactly(2, 2, 1);
+            assertThat(pages.stream().flatMap(List::stream).toList()).isEqualTo(findCards(deckId));
+        }
+
+        @Test
+        public void When_PageEndsAtLastCard_Return_NoNextPageToken() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var result = fetchCardPage(deckId, 2, null);
+
+            assertThat(result.getResponseBody().collectList().block()).hasSize(2);
+            assertThat(result.getResponseHeaders().containsKey(CardController.NEXT_PAGE_TOKEN)).isFalse();
+        }
+
+        @Test
+        public void When_PageTokenInvalid_Return_BadRequest() {
+            var deckId = createDeck().id();
+
+            webClient.get()
+                    .uri("/deck/{deckId}/cards?pageToken={pageToken}", deckId, "not-a-token")
+                    .exchange()
+                    .expectStatus()
+                    .isBadRequest();
+        }
     }
 
     @Nested
@@ -231,6 +554,28 @@ public class CardControllerIntegrationTest {
                         .isNotFound();
             }
 
+            @Test
+            public void When_CardGivenTwice_Return_BadRequest() {
+                var deckId = createDeck().id();
+                var initial = updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+                var updateRequest = List.of(
+                        createCardRequest(initial.get(0).id(), "client-id-1", "updated-term-1", "definition-1"),
+                        createCardRequest(initial.get(0).id(), "client-id-1", "updated-again-term-1", "definition-1")
+                );
+
+                webClient.put()
+                        .uri("/deck/{deckId}/cards", deckId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(updateRequest)
+                        .exchange()
+                        .expectStatus()
+                        .isBadRequest();
+
+                assertThat(findCards(deckId)).extracting(Card::id)
+                        .containsExactly(initial.get(0).id(), initial.get(1).id());
+            }
+
             @Test
             public void When_AddCardExistInOtherDeck_Return_CardNotFound() {
                 var deckId1 = createDeck().id();
@@ -256,6 +601,26 @@ public class CardControllerIntegrationTest {
                         .isNotFound();
             }
 
+            @Test
+            public void When_ReorderingCards_Should_PersistNewOrder() {
+                var deckId = createDeck().id();
+                List<UpdateCardResponse> initial = updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+
+                List<UpdateCardRequest> updateRequest = toRequests(initial.reversed());
+                var actual = updateCards(deckId, updateRequest);
+
+
+                // The first card keeps its ordinal; only the second one is moved in front of it.
+                List<UpdateCardResponse> expected = List.of(
+                        toResponse(updateRequest.get(0), 0).build(),
+                        toResponse(updateRequest.get(1), 1).build()
+                );
+                assertCardsEqualIgnoringTimestamps(actual, expected);
+                assertThat(findCards(deckId)).extracting(Card::id)
+                        .containsExactly(initial.get(1).id(), initial.get(0).id());
+            }
+
             @Test
             public void When_RemoveCard_Should_RemoveCard() {
                 var deckId = createDeck().id();
@@ -270,9 +635,485 @@ public class CardControllerIntegrationTest {
                 List<UpdateCardResponse> expected = toResponses(updateRequest);
                 assertCardsEqualIgnoringTimestamps(actual, expected);
             }
+
+            @Test
+            public void When_IfMatchIsCurrent_Should_UpdateAndReturnNewETag() {
+                var deckId = createDeck().id();
+                updateCards(deckId, INITIAL_CARDS_REQUEST);
+                var eTag = findCardsETag(deckId);
+
+
+                var newETag = webClient.put()
+                        .uri("/deck/{deckId}/cards", deckId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .bodyValue(INITIAL_CARDS_REQUEST.subList(0, 1))
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .returnResult(UpdateCardResponse.class)
+                        .getResponseHeaders()
+                        .getETag();
+
+
+                assertThat(newETag)
+                        .isNotEqualTo(eTag)
+                        .isEqualTo(findCardsETag(deckId));
+            }
+
+            @Test
+            public void When_IfMatchIsStale_Return_Conflict() {
+                var deckId = createDeck().id();
+                updateCards(deckId, INITIAL_CARDS_REQUEST);
+                var eTag = findCardsETag(deckId);
+                updateCards(deckId, INITIAL_CARDS_REQUEST.subList(0, 1));
+
+
+                webClient.put()
+                        .uri("/deck/{deckId}/cards", deckId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .bodyValue(INITIAL_CARDS_REQUEST)
+                        .exchange()
+                        .expectStatus()
+                        .isEqualTo(HttpStatus.CONFLICT);
+
+                webClient.put()
+                        .uri(uriBuilder -> uriBuilder.path("/deck/{deckId}/cards")
+                                .queryParam("baseVersion", 1)
+                                .build(deckId))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(INITIAL_CARDS_REQUEST)
+                        .exchange()
+                        .expectStatus()
+                        .isEqualTo(HttpStatus.CONFLICT);
+
+                assertThat(findCards(deckId)).hasSize(1);
+            }
         }
     }
 
+    @Nested
+    class PatchCardsTests {
+
+        @Test
+        public void When_DeckNotExist_Return_DeckNotFound() {
+            webClient.patch()
+                    .uri("/deck/{deckId}/cards", "deck-not-exist")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(PatchCardsRequest.builder().build())
+                    .exchange()
+                    .expectStatus()
+                    .isNotFound();
+        }
+
+        @Test
+        public void When_UpdatingOneCard_Should_ReturnOnlyThatCard() {
+            var deckId = createDeck().id();
+            var initial = updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var request = PatchCardsRequest.builder()
+                    .upsert(List.of(createCardRequest(initial.get(1).id(), "client-id-2", "updated-term-2", "updated-definition-2")))
+                    .build();
+            var actual = patchCards(deckId, request);
+
+            var expected = List.of(
+                    createCardResponse(initial.get(1).id(), "client-id-2", 2, "updated-term-2", "updated-definition-2")
+            );
+            assertCardsEqualIgnoringTimestamps(actual, expected);
+            assertThat(findCards(deckId)).extracting(Card::front)
+                    .containsExactly(new CardFront("term-1"), new CardFront("updated-term-2"));
+        }
+
+        @Test
+        public void When_AddingAndMovingNewCardToTop_Should_WriteOnlyThatCard() {
+            var deckId = createDeck().id();
+            var initial = updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var request = PatchCardsRequest.builder()
+                    .upsert(List.of(createCardRequest(null, "client-id-3", "term-3", "definition-3")))
+                    .move(List.of(new MoveCardRequest("client-id-3", null)))
+                    .build();
+            var actual = patchCards(deckId, request);
+
+            var expected = List.of(
+                    createCardResponse(actual.get(0).id(), "client-id-3", 0, "term-3", "definition-3")
+            );
+            assertCardsEqualIgnoringTimestamps(actual, expected);
+            assertThat(findCards(deckId)).extracting(Card::id)
+                    .containsExactly(actual.get(0).id(), initial.get(0).id(), initial.get(1).id());
+        }
+
+        @Test
+        public void When_MovingCardDown_Should_WriteOnlyMovedCard() {
+            var deckId = createDeck().id();
+            var initial = updateCards(deckId, List.of(
+                    createCardRequest(null, "client-id-1", "term-1", "definition-1"),
+                    createCardRequest(null, "client-id-2", "term-2", "definition-2"),
+                    createCardRequest(null, "client-id-3", "term-3", "definition-3")
+            ));
+
+            var request = PatchCardsRequest.builder()
+                    .move(List.of(new MoveCardRequest(initial.get(0).id(), initial.get(2).id())))
+                    .build();
+            var actual = patchCards(deckId, request);
+
+            assertThat(actual).extracting(UpdateCardResponse::id).containsExactly(initial.get(0).id());
+            assertThat(findCards(deckId))
+                    .extracting(Card::id, Card::ordinal)
+                    .containsExactly(
+                            tuple(initial.get(1).id(), ordinal(2)),
+                            tuple(initial.get(2).id(), ordinal(3)),
+                            tuple(initial.get(0).id(), ordinal(4))
+                    );
+        }
+
+        @Test
+        public void When_NoRoomLeftBetweenCards_Should_RenumberDeck() {
+            var deckId = createDeck().id();
+            var initial = updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            // Each card lands halfway between the first card and the previously inserted one,
+            // until two neighbours have adjacent ordinals.
+            List<UpdateCardResponse> actual = List.of();
+            for (int i = 1; i <= 11; i++) {
+                var request = PatchCardsRequest.builder()
+                        .upsert(List.of(createCardRequest(null, "client-id-" + i, "inserted-" + i, null)))
+                        .move(List.of(new MoveCardRequest("client-id-" + i, initial.get(0).id())))
+                        .build();
+                actual = patchCards(deckId, request);
+            }
+
+            // The last insert renumbers every card of the deck.
+            assertThat(actual).hasSize(13);
+            var cards = findCards(deckId);
+            assertThat(cards).extracting(Card::ordinal).isSorted().doesNotHaveDuplicates();
+            assertThat(cards).extracting(it -> it.front().term())
+                    .containsExactly("term-1", "inserted-11", "inserted-10", "inserted-9", "inserted-8",
+                            "inserted-7", "inserted-6", "inserted-5", "inserted-4", "inserted-3", "inserted-2",
+                            "inserted-1", "term-2");
+        }
+
+        @Test
+        public void When_DeletingCard_Should_RemoveOnlyThatCard() {
+            var deckId = createDeck().id();
+            var initial = updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var request = PatchCardsRequest.builder()
+                    .delete(List.of(initial.get(0).id()))
+                    .build();
+            var actual = patchCards(deckId, request);
+
+            assertThat(actual).isEmpty();
+            assertThat(findCards(deckId)).extracting(Card::id).containsExactly(initial.get(1).id());
+        }
+
+        @Test
+        public void When_CardExistInOtherDeck_Return_CardNotFound() {
+            var otherDeckCards = updateCards(createDeck().id(), INITIAL_CARDS_REQUEST);
+            var deckId = createDeck().id();
+
+            var request = PatchCardsRequest.builder()
+                    .delete(List.of(otherDeckCards.get(0).id()))
+                    .build();
+
+            webClient.patch()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(request)
+                    .exchange()
+                    .expectStatus()
+                    .isNotFound();
+        }
+
+        @Test
+        public void When_UpdatingCardTwice_Return_BadRequest() {
+            var deckId = createDeck().id();
+            var initial = updateCards(deckId, INITIAL_CARDS_REQUEST);
+            var eTag = findCardsETag(deckId);
+
+            var request = PatchCardsRequest.builder()
+                    .upsert(List.of(
+                            createCardRequest(initial.get(0).id(), "client-id-1", "updated-term-1", null),
+                            createCardRequest(initial.get(0).id(), "client-id-1", "updated-again-term-1", null)
+                    ))
+                    .build();
+
+            webClient.patch()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(request)
+                    .exchange()
+                    .expectStatus()
+                    .isBadRequest();
+
+            assertThat(findCards(deckId)).extracting(Card::front)
+                    .containsExactly(new CardFront("term-1"), new CardFront("term-2"));
+            assertThat(findCardsETag(deckId)).isEqualTo(eTag);
+        }
+
+        @Test
+        public void When_UpdatingAndDeletingCard_Return_BadRequest() {
+            var deckId = createDeck().id();
+            var initial = updateCards(deckId, INITIAL_CARDS_REQUEST);
+            var eTag = findCardsETag(deckId);
+
+            var request = PatchCardsRequest.builder()
+                    .upsert(List.of(createCardRequest(initial.get(0).id(), "client-id-1", "updated-term-1", null)))
+                    .delete(List.of(initial.get(0).id()))
+                    .build();
+
+            webClient.patch()
+                    .uri("/deck/{deckId}/cards", deckId)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(request)
+                    .exchange()
+                    .expectStatus()
+                    .isBadRequest();
+
+            assertThat(findCards(deckId)).extracting(Card::id)
+                    .containsExactly(initial.get(0).id(), initial.get(1).id());
+            assertThat(findCardsETag(deckId)).isEqualTo(eTag);
+        }
+    }
+
+    @Nested
+    class FetchChangesTests {
+
+        @Test
+        public void When_DeckNotExist_Return_DeckNotFound() {
+            webClient.get()
+                    .uri("/deck/{deckId}/cards/changes", "deck-not-exist")
+                    .exchange()
+                    .expectStatus()
+                    .isNotFound();
+        }
+
+        @Test
+        public void When_NoCursor_Return_AllCards() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var changes = fetchChanges(deckId, null);
+
+            assertThat(changes.upserts())
+                    .extracting(it -> it.front().term())
+                    .containsExactly("term-1", "term-2");
+            assertThat(changes.deletions()).isEmpty();
+        }
+
+        @Test
+        public void When_NothingChanged_Return_NoChanges() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+            var cursor = fetchChanges(deckId, null).cursor();
+
+            var changes = fetchChanges(deckId, cursor);
+
+            assertThat(changes.cursor()).isEqualTo(cursor);
+            assertThat(changes.upserts()).isEmpty();
+            assertThat(changes.deletions()).isEmpty();
+        }
+
+        @Test
+        public void When_CardsChanged_Return_OnlyChangedAndDeletedCards() {
+            var deckId = createDeck().id();
+            var initial = updateCards(deckId, List.of(
+                    createCardRequest(null, "client-id-1", "term-1", "definition-1"),
+                    createCardRequest(null, "client-id-2", "term-2", "definition-2"),
+                    createCardRequest(null, "client-id-3", "term-3", "definition-3")
+            ));
+            var cursor = fetchChanges(deckId, null).cursor();
+
+            updateCards(deckId, List.of(
+                    createCardRequest(initial.get(0).id(), "client-id-1", "term-1", "definition-1"),
+                    createCardRequest(initial.get(1).id(), "client-id-2", "updated-term-2", "definition-2"),
+                    createCardRequest(null, "client-id-4", "term-4", "definition-4")
+            ));
+            var changes = fetchChanges(deckId, cursor);
+
+            assertThat(changes.cursor()).isGreaterThan(cursor);
+            assertThat(changes.upserts())
+                    .extracting(it -> it.front().term())
+                    .containsExactly("updated-term-2", "term-4");
+            assertThat(changes.deletions()).containsExactly(initial.get(2).id());
+        }
+    }
+
+    @Nested
+    class ImportCardsTests {
+
+        @Test
+        public void When_DeckNotExist_Return_DeckNotFound() {
+            webClient.post()
+                    .uri("/deck/{deckId}/cards/import", "deck-not-exist")
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .bodyValue("")
+                    .exchange()
+                    .expectStatus()
+                    .isNotFound();
+        }
+
+        @Test
+        public void When_Ndjson_Should_AppendCardsInChunks() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var progress = importCards(deckId, MediaType.APPLICATION_NDJSON, """
+                    {"front":{"term":"term-3"},"back":{"definition":"definition-3"}}
+                    {"front":{"term":"term-4"},"back":{"definition":"definition-4"}}
+                    {"front":{"term":"term-5"},"back":{"definition":"definition-5"}}
+                    """);
+
+            assertThat(progress)
+                    .extracting(ImportProgressResponse::imported)
+                    .containsExactly(2L, 3L);
+            assertThat(findCards(deckId))
+                    .extracting(Card::ordinal, it -> it.front().term(), it -> it.back().definition())
+                    .containsExactly(
+                            tuple(ordinal(1), "term-1", "definition-1"),
+                            tuple(ordinal(2), "term-2", "definition-2"),
+                            tuple(ordinal(3), "term-3", "definition-3"),
+                            tuple(ordinal(4), "term-4", "definition-4"),
+                            tuple(ordinal(5), "term-5", "definition-5")
+                    );
+        }
+
+        @Test
+        public void When_Csv_Should_SkipHeaderAndUnquoteFields() {
+            var deckId = createDeck().id();
+
+            var progress = importCards(deckId, MediaType.parseMediaType("text/csv"), """
+                    term,definition
+                    term-1,definition-1
+                    "term, 2","say ""hi\"""
+                    term-3,
+                    """);
+
+            assertThat(progress)
+                    .extracting(ImportProgressResponse::imported)
+                    .containsExactly(2L, 3L);
+            assertThat(findCards(deckId))
+                    .extracting(it -> it.front().term(), it -> it.back().definition())
+                    .containsExactly(
+                            tuple("term-1", "definition-1"),
+                            tuple("term, 2", "say \"hi\""),
+                            tuple("term-3", null)
+                    );
+        }
+    }
+
+    @Nested
+    class SyncDecksTests {
+
+        @Test
+        public void When_KnownVersionsGiven_Return_CardsOfStaleDecksOnly() {
+            var staleDeckId = createDeck().id();
+            updateCards(staleDeckId, INITIAL_CARDS_REQUEST);
+            var staleETag = findCardsETag(staleDeckId);
+            updateCards(staleDeckId, INITIAL_CARDS_REQUEST.subList(0, 1));
+
+            var currentDeckId = createDeck().id();
+            updateCards(currentDeckId, INITIAL_CARDS_REQUEST);
+            var currentETag = findCardsETag(currentDeckId);
+
+            var emptyDeckId = createDeck().id();
+
+
+            var actual = syncDecks(List.of(
+                    SyncDeckRequest.builder().id(staleDeckId).eTag(staleETag).build(),
+                    SyncDeckRequest.builder().id(currentDeckId).eTag(currentETag).build(),
+                    SyncDeckRequest.builder().id(emptyDeckId).build(),
+                    SyncDeckRequest.builder().id("deck-not-exist").version(0).build()
+            ));
+
+
+            assertThat(actual)
+                    .extracting(SyncDeckResponse::id, SyncDeckResponse::status)
+                    .containsExactly(
+                            tuple(staleDeckId, SyncDeckResponse.Status.OK),
+                            tuple(currentDeckId, SyncDeckResponse.Status.NOT_MODIFIED),
+                            tuple(emptyDeckId, SyncDeckResponse.Status.OK),
+                            tuple("deck-not-exist", SyncDeckResponse.Status.NOT_FOUND)
+                    );
+            assertThat(actual.get(0).eTag()).isEqualTo(findCardsETag(staleDeckId));
+            assertThat(actual.get(0).cards()).isEqualTo(findCards(staleDeckId));
+            assertThat(actual.get(1).eTag()).isEqualTo(currentETag);
+            assertThat(actual.get(1).cards()).isNull();
+            assertThat(actual.get(2).cards()).isEmpty();
+            assertThat(actual.get(3).eTag()).isNull();
+        }
+
+        @Test
+        public void When_VersionIsCurrent_Return_NotModified() {
+            var deckId = createDeck().id();
+            updateCards(deckId, INITIAL_CARDS_REQUEST);
+
+            var actual = syncDecks(List.of(SyncDeckRequest.builder().id(deckId).version(1).build()));
+
+            assertThat(actual)
+                    .extracting(SyncDeckResponse::status)
+                    .containsExactly(SyncDeckResponse.Status.NOT_MODIFIED);
+        }
+    }
+
+    private List<SyncDeckResponse> syncDecks(List<SyncDeckRequest> body) {
+        return webClient.post()
+                .uri("/deck/sync")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(SyncDeckResponse.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+    }
+
+    private List<ImportProgressResponse> importCards(String deckId, MediaType contentType, String body) {
+        return webClient.post()
+                .uri("/deck/{deckId}/cards/import", deckId)
+                .contentType(contentType)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(ImportProgressResponse.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+    }
+
+    private CardChangesResponse fetchChanges(String deckId, Long since) {
+        return webClient.get()
+                .uri(builder -> builder.path("/deck/{deckId}/cards/changes")
+                        .queryParamIfPresent("since", Optional.ofNullable(since))
+                        .build(deckId))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CardChangesResponse.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private List<UpdateCardResponse> patchCards(String deckId, PatchCardsRequest body) {
+        return webClient.patch()
+                .uri("/deck/{deckId}/cards", deckId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(UpdateCardResponse.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+    }
+
     private List<UpdateCardResponse> updateCards(String deckId, Object body) {
         return webClient.put()
                 .uri("/deck/{deckId}/cards", deckId)
@@ -287,6 +1128,45 @@ public class CardControllerIntegrationTest {
                 .block();
     }
 
+    private FluxExchangeResult<Card> fetchCardPage(String deckId, int pageSize, String pageToken) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/deck/{deckId}/cards")
+                        .queryParam("pageSize", pageSize)
+                        .queryParamIfPresent("pageToken", Optional.ofNullable(pageToken))
+                        .build(deckId))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Card.class);
+    }
+
+    private byte[] fetchCardBytes(String deckId, MediaType accept) {
+        return webClient.get()
+                .uri("/deck/{deckId}/cards", deckId)
+                .accept(accept)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private List<Card> fetchCards(String deckId, MediaType accept) {
+        return webClient.get()
+                .uri("/deck/{deckId}/cards", deckId)
+                .accept(accept)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(accept)
+                .returnResult(Card.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+    }
+
     private List<Card> findCards(String deckId) {
         return webClient
                 .get()
@@ -300,6 +1180,20 @@ public class CardControllerIntegrationTest {
                 .block();
     }
 
+    private String findCardsETag(String deckId) {
+        return webClient
+                .get()
+                .uri("/deck/{deckId}/cards", deckId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .exists("ETag")
+                .returnResult(Card.class)
+                .getResponseHeaders()
+                .getETag();
+    }
+
     private DeckResponse createDeck() {
         var request = new DeckRequest("name");
         return webClient
@@ -333,7 +1227,7 @@ public class CardControllerIntegrationTest {
     private static UpdateCardResponse createCardResponse(
             String id,
             String clientId,
-            int ordinal,
+            int position,
             String term,
             String definition
     ) {
@@ -341,7 +1235,7 @@ public class CardControllerIntegrationTest {
                 .builder()
                 .id(id)
                 .clientId(clientId)
-                .ordinal(ordinal)
+                .ordinal(ordinal(position))
                 .front(new CardFront(term))
                 .back(new CardBack(definition))
                 .build();
@@ -349,13 +1243,13 @@ public class CardControllerIntegrationTest {
 
     private static Card createCard(
             String id,
-            int ordinal,
+            int position,
             String term,
             String definition
     ) {
         return new Card(
                 id,
-                ordinal,
+                ordinal(position),
                 new CardFront(term),
                 new CardBack(definition),
                 null,
@@ -370,11 +1264,11 @@ public class CardControllerIntegrationTest {
     }
 
     public ArrayList<UpdateCardResponse> toResponses(List<UpdateCardRequest> responses) {
-        AtomicInteger ordinal = new AtomicInteger();
+        AtomicInteger position = new AtomicInteger();
         return responses.stream()
                 .map(response -> toResponse(
                         response,
-                        ordinal.incrementAndGet()).build()
+                        position.incrementAndGet()).build()
                 )
                 .collect(Collectors.toCollection(ArrayList::new));
     }
@@ -389,16 +1283,23 @@ public class CardControllerIntegrationTest {
 
     public UpdateCardResponse.UpdateCardResponseBuilder toResponse(
             UpdateCardRequest request,
-            int ordinal
+            int position
     ) {
         return UpdateCardResponse.builder()
                 .id(request.id())
                 .clientId(request.clientId())
-                .ordinal(ordinal)
+                .ordinal(ordinal(position))
                 .front(new CardFront(request.front().term()))
                 .back(new CardBack(request.back().definition()));
     }
 
+    /**
+     * @return the ordinal of the card at the given 1-based position of a deck written in one request
+     */
+    private static int ordinal(int position) {
+        return position * CardRepository.ORDINAL_GAP;
+    }
+
     private <T> void assertCardsEqualIgnoringTimestamps(List<T> actual, List<T> expected) {
         assertThat(actual)
                 .usingRecursiveFieldByFieldElementComparatorIgnoringFields("createdAt", "updatedAt")
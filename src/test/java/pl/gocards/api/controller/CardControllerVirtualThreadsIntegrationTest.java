@@ -0,0 +1,16 @@
+package pl.gocards.api.controller;
+
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs {@link CardControllerIntegrationTest} with blocking calls on virtual threads, where each call holds one of
+ * the JDBC permits; several tests read only the headers of a response, which must not keep a permit.
+ */
+@AutoConfigureWebTestClient
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"gocards.import.chunk-size=2", "gocards.blocking.mode=virtual-threads"}
+)
+public class CardControllerVirtualThreadsIntegrationTest extends CardControllerIntegrationTest {
+}
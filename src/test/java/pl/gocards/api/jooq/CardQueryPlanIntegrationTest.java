@@ -0,0 +1,236 @@
+package pl.gocards.api.jooq;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+import org.jooq.ExecuteListenerProvider;
+import org.jooq.Query;
+import org.jooq.Select;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+import pl.gocards.api.entity.Deck;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.gocards.api.jooq.CardRepository.ORDINAL_GAP;
+
+/**
+ * Runs {@code EXPLAIN} on the queries of the card repository, with sequential and bitmap scans and sorts disabled
+ * so that the planner only falls back to them when no index matches, whatever the statistics of the test database,
+ * and fails on a sequential scan or on a sort by ordinal that an index should have provided.
+ */
+@SpringBootTest
+public class CardQueryPlanIntegrationTest {
+
+    private static final Set<String> SORT_NODES = Set.of("Sort", "Incremental Sort");
+
+    private final CardRepository cardRepository;
+
+    private final DeckRepository deckRepository;
+
+    private final DSLContext dslContext;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final QueryRecorder queryRecorder;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public CardQueryPlanIntegrationTest(
+            CardRepository cardRepository,
+            DeckRepository deckRepository,
+            DSLContext dslContext,
+            TransactionTemplate transactionTemplate,
+            QueryRecorder queryRecorder
+    ) {
+        this.cardRepository = cardRepository;
+        this.deckRepository = deckRepository;
+        this.dslContext = dslContext;
+        this.transactionTemplate = transactionTemplate;
+        this.queryRecorder = queryRecorder;
+    }
+
+    @Test
+    public void When_FindByDeck_Should_ReadIndexInOrder() {
+        var plans = explain(() -> cardRepository.findByDeck("deck-id").close());
+
+        assertNoSequentialScan(plans);
+        assertNoSortByOrdinal(plans);
+    }
+
+    /**
+     * In the normalized layout the joined rows of the page are sorted again; the sort is bounded by the page size.
+     */
+    @Test
+    public void When_FindPage_Should_StopIndexScanAtPageSize() {
+        var plans = explain(() -> cardRepository.findPage("deck-id", ORDINAL_GAP, "card-id", 10));
+
+        assertNoSequentialScan(plans);
+        plans.forEach(plan -> assertThat(nodes(plan))
+                .filteredOn(node -> "Limit".equals(node.path("Node Type").asText()))
+                .flatExtracting(node -> nodes(node.path("Plans").get(0)))
+                .extracting(node -> node.path("Index Name").asText())
+                .as("index scans under a limit in %s", plan)
+                .contains("idx_card_deck_id_ordinal_id"));
+    }
+
+    @Test
+    public void When_FindByIds_Should_ReadIndexInOrder() {
+        var plans = explain(() -> cardRepository.findByIds("deck-id", List.of("card-id-1", "card-id-2")).close());
+
+        assertNoSequentialScan(plans);
+        assertNoSortByOrdinal(plans);
+    }
+
+    /**
+     * Depending on the server version the cards of several decks may still be merged with a sort,
+     * so only the index access is checked.
+     */
+    @Test
+    public void When_FindByDecks_Should_ReadIndex() {
+        var plans = explain(() -> cardRepository.findByDecks(List.of("deck-id-1", "deck-id-2")));
+
+        assertNoSequentialScan(plans);
+    }
+
+    @Test
+    public void When_FindIdsByDeck_Should_ReadIndex() {
+        var plans = explain(() -> {
+            cardRepository.findIdsByDeck("deck-id");
+            cardRepository.findIdsByDeck("deck-id", List.of("card-id-1", "card-id-2"));
+        });
+
+        assertNoSequentialScan(plans);
+    }
+
+    /**
+     * Only the changed cards are sorted by ordinal, so the sort is expected here.
+     */
+    @Test
+    public void When_FindUpdatedSince_Should_ReadIndex() {
+        var plans = explain(() -> cardRepository.findUpdatedSince("deck-id", LocalDateTime.now()).close());
+
+        assertNoSequentialScan(plans);
+    }
+
+    @Test
+    public void When_Append_Should_ReadLastOrdinalFromIndex(TestInfo testInfo) {
+        var deckId = UUID.randomUUID().toString();
+        deckRepository.save(new Deck(deckId, testInfo.getDisplayName()), LocalDateTime.now());
+        var card = new Card(UUID.randomUUID().toString(), null, new CardFront("term"), new CardBack(null), null, null);
+
+        var plans = explain(() -> cardRepository.append(deckId, List.of(card), LocalDateTime.now()));
+
+        assertNoSequentialScan(plans);
+        assertNoSortByOrdinal(plans);
+    }
+
+    /**
+     * Records the {@code SELECT}s run by the action and explains them in the same transaction, which is then
+     * rolled back.
+     */
+    private List<JsonNode> explain(Runnable action) {
+        return transactionTemplate.execute(status -> {
+            dslContext.execute("SET LOCAL enable_seqscan = off");
+            dslContext.execute("SET LOCAL enable_bitmapscan = off");
+            dslContext.execute("SET LOCAL enable_sort = off");
+
+            var queries = queryRecorder.record(action);
+            assertThat(queries).isNotEmpty();
+
+            var plans = new ArrayList<JsonNode>();
+            for (var query : queries) {
+                var plan = dslContext.fetchOne("EXPLAIN (FORMAT JSON) " + dslContext.renderInlined(query))
+                        .get(0, String.class);
+                plans.add(readTree(plan).get(0).get("Plan"));
+            }
+            status.setRollbackOnly();
+            return plans;
+        });
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void assertNoSequentialScan(List<JsonNode> plans) {
+        plans.forEach(plan -> assertThat(nodes(plan))
+                .filteredOn(node -> "Seq Scan".equals(node.path("Node Type").asText()))
+                .as("sequential scans in %s", plan)
+                .isEmpty());
+    }
+
+    private static void assertNoSortByOrdinal(List<JsonNode> plans) {
+        plans.forEach(plan -> assertThat(nodes(plan))
+                .filteredOn(node -> SORT_NODES.contains(node.path("Node Type").asText()))
+                .filteredOn(node -> node.path("Sort Key").toString().contains("ordinal"))
+                .as("sorts by ordinal in %s", plan)
+                .isEmpty());
+    }
+
+    private static List<JsonNode> nodes(JsonNode plan) {
+        var nodes = new ArrayList<JsonNode>();
+        nodes.add(plan);
+        plan.path("Plans").forEach(child -> nodes.addAll(nodes(child)));
+        return nodes;
+    }
+
+    static class QueryRecorder implements ExecuteListener {
+
+        private final ThreadLocal<List<Query>> recorded = new ThreadLocal<>();
+
+        @Override
+        public void executeStart(ExecuteContext ctx) {
+            var queries = recorded.get();
+            if (queries != null && ctx.query() instanceof Select<?>) {
+                queries.add(ctx.query());
+            }
+        }
+
+        List<Query> record(Runnable action) {
+            var queries = new ArrayList<Query>();
+            recorded.set(queries);
+            try {
+                action.run();
+            } finally {
+                recorded.remove();
+            }
+            return queries;
+        }
+    }
+
+    @TestConfiguration
+    static class Configuration {
+
+        @Bean
+        QueryRecorder queryRecorder() {
+            return new QueryRecorder();
+        }
+
+        @Bean
+        ExecuteListenerProvider queryRecorderProvider(QueryRecorder queryRecorder) {
+            return new DefaultExecuteListenerProvider(queryRecorder);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package pl.gocards.api.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import pl.gocards.api.controller.model.DeckRequest;
+import pl.gocards.api.controller.model.DeckResponse;
+import pl.gocards.api.controller.model.UpdateCardRequest;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@AutoConfigureWebTestClient
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "gocards.sql-metrics.debug-header=true"
+)
+public class SqlMetricsIntegrationTest {
+
+    @Autowired
+    WebTestClient webClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void When_FetchingCards_Return_SqlStatsHeader() {
+        var deckId = createDeckWithCards();
+
+        var serverTiming = webClient.get()
+                .uri("/deck/{deckId}/cards", deckId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(String.class)
+                .getResponseHeaders()
+                .getFirst(SqlMetricsWebFilter.SERVER_TIMING);
+
+        // The deck existence check (one row) and the card query (two rows).
+        assertThat(serverTiming).startsWith("sql;dur=").contains("\"2 statements, 3 rows,");
+    }
+
+    @Test
+    public void When_UpdatingCards_Should_RecordStatementsPerRepositoryMethod() {
+        createDeckWithCards();
+
+        assertThat(meterRegistry.find("gocards.sql.execution").tag("method", "DeckRepository.compareAndSetVersion").timer())
+                .isNotNull()
+                .satisfies(timer -> assertThat(timer.count()).isPositive());
+        assertThat(meterRegistry.find("gocards.sql.execution").tag("method", "CardFrontRepository.batchCreate").timer())
+                .isNotNull();
+        assertThat(meterRegistry.find("gocards.http.sql.statements").tag("uri", "/deck/{deckId}/cards").summary())
+                .isNotNull()
+                .satisfies(summary -> assertThat(summary.max()).isPositive());
+    }
+
+    private String createDeckWithCards() {
+        var deck = webClient.post()
+                .uri("/deck")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new DeckRequest("Test Deck"))
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(DeckResponse.class)
+                .returnResult()
+                .getResponseBody();
+
+        webClient.put()
+                .uri("/deck/{deckId}/cards", deck.id())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(
+                        new UpdateCardRequest(null, "client-id-1", new CardFront("term-1"), new CardBack("definition-1")),
+                        new UpdateCardRequest(null, "client-id-2", new CardFront("term-2"), new CardBack("definition-2"))
+                ))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        return deck.id();
+    }
+}
@@ -0,0 +1,93 @@
+package pl.gocards.api.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+import pl.gocards.api.entity.Deck;
+import pl.gocards.api.jooq.CardRepository;
+import pl.gocards.api.jooq.DeckRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static pl.gocards.api.jooq.CardRepository.ORDINAL_GAP;
+
+/**
+ * Creates cards through {@link CardService} with the {@code COPY} threshold lowered to one card.
+ */
+@SpringBootTest(properties = "gocards.cards.copy-threshold=1")
+public class CardCopyIntegrationTest {
+
+    private final DeckRepository deckRepository;
+
+    private final CardRepository cardRepository;
+
+    private final CardService cardService;
+
+    @Autowired
+    public CardCopyIntegrationTest(
+            DeckRepository deckRepository,
+            CardRepository cardRepository,
+            CardService cardService
+    ) {
+        this.deckRepository = deckRepository;
+        this.cardRepository = cardRepository;
+        this.cardService = cardService;
+    }
+
+    @Test
+    public void When_CardsCopied_Should_StoreAllColumns(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+
+        var snapshot = cardService.update(deckId, List.of(
+                createCard(1, "term-1", "definition-1"),
+                createCard(2, "zażółć", null),
+                createCard(3, null, "definition-3")
+        ));
+
+        try (var cards = cardRepository.findByDeck(deckId)) {
+            assertThat(cards.toList())
+                    .extracting(Card::ordinal, it -> it.front().term(), it -> it.back().definition(), Card::updatedAt)
+                    .containsExactly(
+                            tuple(ORDINAL_GAP, "term-1", "definition-1", snapshot.deck().updatedAt()),
+                            tuple(2 * ORDINAL_GAP, "zażółć", null, snapshot.deck().updatedAt()),
+                            tuple(3 * ORDINAL_GAP, null, "definition-3", snapshot.deck().updatedAt())
+                    );
+        }
+    }
+
+    @Test
+    public void When_TransactionRolledBack_Should_DiscardCopiedCards(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+
+        assertThatThrownBy(() -> cardService.update(
+                deckId,
+                List.of(createCard(1, "term-1", "definition-1")),
+                () -> {
+                    throw new IllegalStateException("rollback");
+                }
+        )).isInstanceOf(IllegalStateException.class);
+
+        try (var cards = cardRepository.findByDeck(deckId)) {
+            assertThat(cards).isEmpty();
+        }
+    }
+
+    private String createDeck(String name) {
+        var deckId = UUID.randomUUID().toString();
+        deckRepository.save(new Deck(deckId, name), LocalDateTime.now());
+        return deckId;
+    }
+
+    private Card createCard(Integer ordinal, String term, String definition) {
+        return new Card(UUID.randomUUID().toString(), ordinal, new CardFront(term), new CardBack(definition), null, null);
+    }
+}
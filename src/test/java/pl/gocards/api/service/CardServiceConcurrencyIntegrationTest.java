@@ -1,5 +1,8 @@
 package pl.gocards.api.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,18 +12,23 @@ import pl.gocards.api.entity.Card;
 import pl.gocards.api.entity.CardBack;
 import pl.gocards.api.entity.CardFront;
 import pl.gocards.api.entity.Deck;
+import pl.gocards.api.exception.DeckVersionConflictException;
 import pl.gocards.api.jooq.CardRepository;
 import pl.gocards.api.jooq.DeckRepository;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pl.gocards.api.jooq.CardRepository.ORDINAL_GAP;
 
 @SpringBootTest
 public class CardServiceConcurrencyIntegrationTest {
@@ -31,22 +39,31 @@ public class CardServiceConcurrencyIntegrationTest {
 
     private final CardService cardService;
 
+    private final DSLContext dslContext;
+
+    private final MeterRegistry meterRegistry;
+
     private final LocalDateTime now = LocalDateTime.now();
 
     @Autowired
     public CardServiceConcurrencyIntegrationTest(
             CardRepository cardRepository,
             DeckRepository deckRepository,
-            CardService cardService
+            CardService cardService,
+            DSLContext dslContext,
+            MeterRegistry meterRegistry
     ) {
         this.cardRepository = cardRepository;
         this.deckRepository = deckRepository;
         this.cardService = cardService;
+        this.dslContext = dslContext;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
-     * This only succeeds with SERIALIZABLE transaction isolation or when an explicit lock is applied before updating.
-     * @see DeckRepository#existsWithUpdateLock(String)
+     * This only succeeds with SERIALIZABLE transaction isolation, when an explicit lock is applied before updating,
+     * or when the write is conditional on the deck version that was read.
+     * @see DeckRepository#compareAndSetVersion(String, int, LocalDateTime)
      */
     @Test
     public void When_UpdatingCardsConcurrently_Should_Serializable(TestInfo testInfo) {
@@ -86,6 +103,141 @@ public class CardServiceConcurrencyIntegrationTest {
                 );
     }
 
+    @Test
+    public void When_BaseVersionIsStale_Should_Conflict(TestInfo testInfo) {
+        var card1 = createNewCard(ORDINAL_GAP, "term-1", "back-1");
+        var card2 = createNewCard(2 * ORDINAL_GAP, "term-2", "back-2");
+
+        var deck = createDeck(testInfo.getDisplayName());
+        deckRepository.save(deck, now);
+        var snapshot = cardService.update(deck.id(), List.of(card1), Set.of(), 0);
+
+        assertThat(snapshot.deck().version()).isEqualTo(1);
+        assertThatThrownBy(() -> cardService.update(deck.id(), List.of(card1, card2), Set.of(), 0))
+                .isInstanceOf(DeckVersionConflictException.class);
+        assertThat(cardRepository.findByDeck(deck.id()).toList())
+                .extracting(Card::id)
+                .containsExactly(card1.id());
+    }
+
+    /**
+     * The second writer reads the deck while the first one has not committed yet. Its compare-and-set then waits
+     * for the first writer and fails, so the diff is computed again against the cards of the first writer.
+     */
+    @Test
+    public void When_DeckChangedAfterRead_Should_RebaseOnLatestVersion(TestInfo testInfo) {
+        var card1 = createNewCard(ORDINAL_GAP, "term-1", "back-1");
+        var card2 = createNewCard(2 * ORDINAL_GAP, "term-2", "back-2");
+        var card3 = createNewCard(ORDINAL_GAP, "term-3", "back-3");
+
+        var deck = createDeck(testInfo.getDisplayName());
+        deckRepository.save(deck, now);
+        var retries = retries();
+
+        var secondUpdate = executeDuringUncommittedUpdate(
+                deck.id(),
+                List.of(card1, card2),
+                () -> cardService.update(deck.id(), List.of(card3))
+        );
+
+        assertThat(secondUpdate.join().deck().version()).isEqualTo(2);
+        assertThat(retries()).isEqualTo(retries + 1);
+        assertThat(deckRepository.find(deck.id()).version()).isEqualTo(2);
+        assertThat(cardRepository.findByDeck(deck.id()).toList())
+                .extracting(Card::id)
+                .containsExactly(card3.id());
+    }
+
+    @Test
+    public void When_DeckChangedAfterBaseVersion_Should_Conflict(TestInfo testInfo) {
+        var card1 = createNewCard(ORDINAL_GAP, "term-1", "back-1");
+        var card2 = createNewCard(ORDINAL_GAP, "term-2", "back-2");
+
+        var deck = createDeck(testInfo.getDisplayName());
+        deckRepository.save(deck, now);
+
+        var secondUpdate = executeDuringUncommittedUpdate(
+                deck.id(),
+                List.of(card1),
+                () -> cardService.update(deck.id(), List.of(card2), Set.of(), 0)
+        );
+
+        assertThatThrownBy(secondUpdate::join)
+                .hasRootCauseInstanceOf(DeckVersionConflictException.class);
+        assertThat(deckRepository.find(deck.id()).version()).isEqualTo(1);
+        assertThat(cardRepository.findByDeck(deck.id()).toList())
+                .extracting(Card::id)
+                .containsExactly(card1.id());
+    }
+
+    /**
+     * The deck was last written with a clock ahead of the current one, as after the clock of the server stepped back.
+     */
+    @Test
+    public void When_RenamingDeckWrittenLater_Should_KeepUpdatedAtIncreasing(TestInfo testInfo) {
+        var deck = createDeck(testInfo.getDisplayName());
+        deckRepository.save(deck, now.plusHours(1));
+        var previous = deckRepository.find(deck.id());
+
+        var renamed = cardService.rename(deck.id(), "renamed");
+
+        var actual = deckRepository.find(deck.id());
+        assertThat(actual).isEqualTo(renamed);
+        assertThat(actual.name()).isEqualTo("renamed");
+        assertThat(actual.updatedAt()).isAfter(previous.updatedAt());
+        assertThat(actual.version()).isEqualTo(previous.version() + 1);
+    }
+
+    /**
+     * Starts {@code secondUpdate} once the first update has written its cards, and lets the first update commit
+     * once {@code secondUpdate} waits for its lock on the deck.
+     */
+    private <E> CompletableFuture<E> executeDuringUncommittedUpdate(
+            String deckId,
+            List<Card> firstCards,
+            Callable<E> secondUpdate
+    ) {
+        CountDownLatch writtenLatch = new CountDownLatch(1);
+        CountDownLatch commitLatch = new CountDownLatch(1);
+
+        CompletableFuture<Object> firstUpdate = executeAsync(() -> {
+            cardService.update(deckId, firstCards, () -> {
+                try {
+                    writtenLatch.countDown();
+                    commitLatch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            return null;
+        });
+
+        try {
+            writtenLatch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        var second = executeAsync(secondUpdate);
+        awaitLockWait();
+        commitLatch.countDown();
+        firstUpdate.join();
+        return second;
+    }
+
+    private void awaitLockWait() {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (dslContext.fetchCount(DSL.table("pg_locks"), DSL.condition("not granted")) == 0) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("No statement waited for a lock within 5 seconds");
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    private double retries() {
+        return meterRegistry.get("gocards.cards.write.retries").counter().count();
+    }
+
     private CompletableFuture executeWithLatch(
             CountDownLatch concurrentStartLatch,
             Runnable runnable
@@ -107,10 +259,10 @@ public class CardServiceConcurrencyIntegrationTest {
      */
     @Test
     public void When_ReadDeckDuringConcurrentUpdate_ShouldReadCommittedData(TestInfo testInfo) {
-        var card1 = createNewCard(1, "term-1", "back-1");
+        var card1 = createNewCard(ORDINAL_GAP, "term-1", "back-1");
 
-        var card2 = createCard(card1.id(), 1, "updated-term-1", "updated-back-1");
-        var card3 = createNewCard(2, "new-term-2", "new-back-2");
+        var card2 = createCard(card1.id(), ORDINAL_GAP, "updated-term-1", "updated-back-1");
+        var card3 = createNewCard(2 * ORDINAL_GAP, "new-term-2", "new-back-2");
 
         var deck = createDeck(testInfo.getDisplayName());
         deckRepository.save(deck, now);
@@ -0,0 +1,110 @@
+package pl.gocards.api.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+import pl.gocards.api.entity.Deck;
+import pl.gocards.api.jooq.DeckRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.gocards.api.jooq.CardRepository.ORDINAL_GAP;
+
+@SpringBootTest(properties = "gocards.cache.expire-after-write=1s")
+public class DeckCacheIntegrationTest {
+
+    private final DeckRepository deckRepository;
+
+    private final CardService cardService;
+
+    private final DeckCache deckCache;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public DeckCacheIntegrationTest(
+            DeckRepository deckRepository,
+            CardService cardService,
+            DeckCache deckCache,
+            MeterRegistry meterRegistry
+    ) {
+        this.deckRepository = deckRepository;
+        this.cardService = cardService;
+        this.deckCache = deckCache;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Test
+    public void When_CardsReadTwice_Should_HitCache(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+        cardService.update(deckId, List.of(createCard(ORDINAL_GAP, "term-1")));
+        var hits = cardHits();
+
+        var first = deckCache.findCards(deckCache.find(deckId));
+        var second = deckCache.findCards(deckCache.find(deckId));
+
+        assertThat(second).isSameAs(first);
+        assertThat(cardHits()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void When_CardsUpdated_Should_EvictAfterCommit(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+        cardService.update(deckId, List.of(createCard(ORDINAL_GAP, "term-1")));
+        var before = deckCache.find(deckId);
+        deckCache.findCards(before);
+
+        var card = createCard(ORDINAL_GAP, "term-2");
+        cardService.update(deckId, List.of(card));
+
+        var after = deckCache.find(deckId);
+        assertThat(after.updatedAt()).isAfter(before.updatedAt());
+        assertThat(deckCache.findCards(after)).containsExactly(card);
+    }
+
+    /**
+     * The deck is renamed without evicting it, as another instance would.
+     */
+    @Test
+    public void When_DeckChangedElsewhere_Should_ExpireAfterWrite(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+        var cached = deckCache.find(deckId);
+
+        deckRepository.rename(deckId, "renamed", cached.version(), LocalDateTime.now());
+
+        assertThat(deckCache.find(deckId)).isSameAs(cached);
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (deckCache.find(deckId).name().equals(cached.name())) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            LockSupport.parkNanos(50_000_000);
+        }
+        assertThat(deckCache.find(deckId).version()).isEqualTo(cached.version() + 1);
+    }
+
+    private double cardHits() {
+        return meterRegistry.get("cache.gets")
+                .tag("cache", "cards")
+                .tag("result", "hit")
+                .functionCounter()
+                .count();
+    }
+
+    private String createDeck(String name) {
+        var deckId = UUID.randomUUID().toString();
+        deckRepository.save(new Deck(deckId, name), LocalDateTime.now());
+        return deckId;
+    }
+
+    private Card createCard(Integer ordinal, String term) {
+        return new Card(UUID.randomUUID().toString(), ordinal, new CardFront(term), new CardBack(null), null, null);
+    }
+}
@@ -0,0 +1,257 @@
+package pl.gocards.api.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.gocards.api.config.BlockingExecutor;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+import pl.gocards.api.entity.CardReplacement;
+import pl.gocards.api.entity.CardReplacementResult;
+import pl.gocards.api.entity.Deck;
+import pl.gocards.api.entity.DeckSnapshot;
+import pl.gocards.api.exception.CardNotFoundException;
+import pl.gocards.api.exception.DeckNotFoundException;
+import pl.gocards.api.jooq.CardRepository;
+import pl.gocards.api.jooq.DeckRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pl.gocards.api.jooq.CardRepository.ORDINAL_GAP;
+import static pl.gocards.api.jooq.Tables.DECK;
+
+@SpringBootTest(properties = "gocards.cards.coalesce.enabled=true")
+public class DeckWriteCoalescerIntegrationTest {
+
+    private final DeckRepository deckRepository;
+
+    private final CardRepository cardRepository;
+
+    private final DeckWriteCoalescer deckWriteCoalescer;
+
+    private final DSLContext dslContext;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final CardDiffEngine cardDiffEngine;
+
+    private final DeckCache deckCache;
+
+    private final BlockingExecutor blockingExecutor;
+
+    @Autowired
+    public DeckWriteCoalescerIntegrationTest(
+            DeckRepository deckRepository,
+            CardRepository cardRepository,
+            DeckWriteCoalescer deckWriteCoalescer,
+            DSLContext dslContext,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            CardDiffEngine cardDiffEngine,
+            DeckCache deckCache,
+            BlockingExecutor blockingExecutor
+    ) {
+        this.deckRepository = deckRepository;
+        this.cardRepository = cardRepository;
+        this.deckWriteCoalescer = deckWriteCoalescer;
+        this.dslContext = dslContext;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.cardDiffEngine = cardDiffEngine;
+        this.deckCache = deckCache;
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    /**
+     * The replacements queued behind the first write are written in one transaction, but each as its own version,
+     * so the cards created by a replacement superseded by a later one are returned to its caller and recorded as
+     * deleted by the later one.
+     */
+    @Test
+    public void When_UpdatesQueuedBehindRunningWrite_Should_WriteThemInOneTransaction(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+        var start = LocalDateTime.now();
+        var writes = merged().count();
+        var merges = merged().totalAmount();
+
+        List<List<Card>> replacements = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            replacements.add(List.of(createCard(ORDINAL_GAP, "term-" + i)));
+        }
+        var snapshots = updateBehindLock(deckId, replacements, Set.of()).stream()
+                .map(CompletableFuture::join)
+                .toList();
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(snapshots.get(i).cards()).extracting(Card::id).containsExactly(replacements.get(i).get(0).id());
+            assertThat(snapshots.get(i).deck().version()).isEqualTo(i + 1);
+        }
+        assertThat(cardRepository.findByDeck(deckId).toList())
+                .extracting(Card::id)
+                .containsExactly(replacements.get(3).get(0).id());
+        assertThat(cardRepository.findDeletedSince(deckId, start))
+                .containsExactlyInAnyOrderElementsOf(replacements.subList(0, 3).stream().map(it -> it.get(0).id()).toList());
+        assertThat(merged().count() - writes).isEqualTo(2);
+        assertThat(merged().totalAmount() - merges).isEqualTo(4);
+        assertThat(queueDepth()).isZero();
+    }
+
+    @Test
+    public void When_IdenticalUpdatesQueued_Should_WriteThemOnce(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+        var writes = merged().count();
+
+        var first = List.of(createCard(ORDINAL_GAP, "term-1"));
+        var second = List.of(createCard(ORDINAL_GAP, "term-2"));
+        var snapshots = updateBehindLock(deckId, List.of(first, second, second, second), Set.of()).stream()
+                .map(CompletableFuture::join)
+                .toList();
+
+        assertThat(snapshots.subList(1, 4)).allSatisfy(snapshot -> assertThat(snapshot).isEqualTo(snapshots.get(1)));
+        assertThat(snapshots.get(1).cards()).extracting(Card::id).containsExactly(second.get(0).id());
+        assertThat(deckRepository.find(deckId).version()).isEqualTo(2);
+        assertThat(merged().count() - writes).isEqualTo(2);
+    }
+
+    @Test
+    public void When_QueuedUpdateExpectsMissingCard_Should_RejectOnlyThatUpdate(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+        var first = List.of(createCard(ORDINAL_GAP, "term-1"));
+        var missing = createCard(ORDINAL_GAP, "term-2");
+        var last = List.of(createCard(ORDINAL_GAP, "term-3"));
+
+        var updates = updateBehindLock(deckId, List.of(first, List.of(missing), last), Set.of(missing.id()));
+
+        assertThat(updates.get(0).join().cards()).extracting(Card::id).containsExactly(first.get(0).id());
+        assertThatThrownBy(updates.get(1)::join).hasCauseInstanceOf(CardNotFoundException.class);
+        assertThat(updates.get(2).join().cards()).extracting(Card::id).containsExactly(last.get(0).id());
+        assertThat(deckRepository.find(deckId).version()).isEqualTo(2);
+    }
+
+    @Test
+    public void When_WriteThrowsError_Should_FailItsCallersAndWriteNextUpdates(TestInfo testInfo) {
+        var deckId = createDeck(testInfo.getDisplayName());
+        var failing = new AtomicBoolean(true);
+        var cardService = new CardService(
+                deckRepository, cardRepository, cardDiffEngine, deckCache, transactionTemplate, 3, meterRegistry
+        ) {
+            @Override
+            public List<CardReplacementResult> updateAll(String deckId, List<CardReplacement> replacements) {
+                if (failing.getAndSet(false)) {
+                    throw new StackOverflowError();
+                }
+                return super.updateAll(deckId, replacements);
+            }
+        };
+        var coalescer = new DeckWriteCoalescer(cardService, blockingExecutor, true, new SimpleMeterRegistry());
+        var cards = List.of(createCard(ORDINAL_GAP, "term"));
+
+        assertThatThrownBy(() -> coalescer.update(deckId, cards, Set.of(), null).block())
+                .isInstanceOf(StackOverflowError.class);
+        assertThat(coalescer.update(deckId, cards, Set.of(), null).block().deck().version()).isEqualTo(1);
+    }
+
+    @Test
+    public void When_DeckNotExist_Should_ThrowDeckNotFound() {
+        var deckId = UUID.randomUUID().toString();
+
+        assertThatThrownBy(() -> deckWriteCoalescer.update(deckId, List.of(createCard(ORDINAL_GAP, "term")), Set.of(), null).block())
+                .isInstanceOf(DeckNotFoundException.class);
+    }
+
+    /**
+     * Submits the replacements while the test holds a lock on the deck: the first write waits for the lock and
+     * the others queue up behind it. The lock is released once all of them are queued.
+     *
+     * @param expectedCardIds sent with the second replacement only
+     */
+    private List<CompletableFuture<DeckSnapshot>> updateBehindLock(
+            String deckId,
+            List<List<Card>> replacements,
+            Set<String> expectedCardIds
+    ) {
+        var requests = requests();
+
+        CountDownLatch lockedLatch = new CountDownLatch(1);
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        var lock = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            dslContext.selectFrom(DECK).where(DECK.ID.eq(deckId)).forUpdate().fetchOne();
+            lockedLatch.countDown();
+            await(releaseLatch);
+        }));
+        await(lockedLatch);
+
+        List<CompletableFuture<DeckSnapshot>> updates = new ArrayList<>();
+        for (int i = 0; i < replacements.size(); i++) {
+            var expected = i == 1 ? expectedCardIds : Set.<String>of();
+            updates.add(deckWriteCoalescer.update(deckId, replacements.get(i), expected, null).toFuture());
+
+            // The first replacement is written at once; the others wait in the queue behind it.
+            var queued = i;
+            waitUntil(() -> requests() == requests + queued + 1 && queueDepth() == queued);
+        }
+        releaseLatch.countDown();
+        lock.join();
+        return updates;
+    }
+
+    private double requests() {
+        return meterRegistry.get("gocards.cards.coalesce.requests").counter().count();
+    }
+
+    private double queueDepth() {
+        return meterRegistry.get("gocards.cards.coalesce.queue.depth").gauge().value();
+    }
+
+    private DistributionSummary merged() {
+        return meterRegistry.get("gocards.cards.coalesce.merged").summary();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within 5 seconds");
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String createDeck(String name) {
+        var deckId = UUID.randomUUID().toString();
+        deckRepository.save(new Deck(deckId, name), LocalDateTime.now());
+        return deckId;
+    }
+
+    private static Card createCard(Integer ordinal, String term) {
+        return new Card(UUID.randomUUID().toString(), ordinal, new CardFront(term), new CardBack(null), null, null);
+    }
+}
@@ -0,0 +1,87 @@
+package pl.gocards.api.service;
+
+import org.junit.jupiter.api.Test;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardBack;
+import pl.gocards.api.entity.CardFront;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class HashCardDiffEngineTest {
+
+    private final CardDiffEngine engine = new HashCardDiffEngine();
+
+    @Test
+    public void When_NothingChanged_Return_EmptyDiff() {
+        var existing = List.of(createCard("1", 1, "term-1"), createCard("2", 2, "term-2"));
+
+        var diff = engine.diff(existing, List.copyOf(existing));
+
+        assertThat(diff.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void When_CardNotInExisting_Should_CreateIt() {
+        var existing = List.of(createCard("1", 1, "term-1"));
+        var cards = List.of(createCard("1", 1, "term-1"), createCard("2", 2, "term-2"));
+
+        var diff = engine.diff(existing, cards);
+
+        assertThat(diff.creations()).extracting(Card::id).containsExactly("2");
+        assertThat(diff.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void When_CardMissingFromRequest_Should_DeleteIt() {
+        var existing = List.of(createCard("1", 1, "term-1"), createCard("2", 2, "term-2"));
+        var cards = List.of(createCard("1", 1, "term-1"));
+
+        var diff = engine.diff(existing, cards);
+
+        assertThat(diff.deletions()).containsExactly("2");
+        assertThat(diff.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void When_ContentChanged_Should_UpdateWithoutMove() {
+        var existing = List.of(createCard("1", 1, "term-1"));
+        var cards = List.of(createCard("1", 1, "updated-term-1"));
+
+        var diff = engine.diff(existing, cards);
+
+        assertThat(diff.updates()).extracting(Card::id).containsExactly("1");
+        assertThat(diff.moves()).isEmpty();
+    }
+
+    @Test
+    public void When_OrdinalChanged_Should_MoveWithoutUpdate() {
+        var existing = List.of(createCard("1", 1, "term-1"), createCard("2", 2, "term-2"));
+        var cards = List.of(createCard("2", 1, "term-2"), createCard("1", 2, "term-1"));
+
+        var diff = engine.diff(existing, cards);
+
+        assertThat(diff.moves()).extracting(Card::id, Card::ordinal)
+                .containsExactly(
+                        tuple("2", 1),
+                        tuple("1", 2)
+                );
+        assertThat(diff.updates()).isEmpty();
+    }
+
+    @Test
+    public void When_FrontMissingAndStoredFrontEmpty_Should_NotUpdate() {
+        var existing = List.of(new Card("1", 1, new CardFront(null), new CardBack(null), null, null));
+        var cards = List.of(new Card("1", 1));
+
+        var diff = engine.diff(existing, cards);
+
+        assertThat(diff.isEmpty()).isTrue();
+    }
+
+    private static Card createCard(String id, int ordinal, String term) {
+        return new Card(id, ordinal, new CardFront(term), new CardBack("definition"), null, null);
+    }
+}
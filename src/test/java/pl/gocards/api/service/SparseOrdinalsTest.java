@@ -0,0 +1,83 @@
+package pl.gocards.api.service;
+
+import org.junit.jupiter.api.Test;
+import pl.gocards.api.entity.Card;
+import pl.gocards.api.entity.CardFront;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static pl.gocards.api.jooq.CardRepository.ORDINAL_GAP;
+
+public class SparseOrdinalsTest {
+
+    @Test
+    public void When_DeckEmpty_Return_OrdinalsGapApart() {
+        var cards = List.of(createCard("1", null), createCard("2", null));
+
+        var assigned = SparseOrdinals.assign(List.of(), cards);
+
+        assertThat(assigned).extracting(Card::ordinal).containsExactly(ORDINAL_GAP, 2 * ORDINAL_GAP);
+    }
+
+    @Test
+    public void When_CardInsertedAtTop_Should_KeepOtherOrdinals() {
+        var existing = List.of(createCard("1", ORDINAL_GAP), createCard("2", 2 * ORDINAL_GAP));
+        var cards = List.of(createCard("3", null), createCard("1", null), createCard("2", null));
+
+        var assigned = SparseOrdinals.assign(existing, cards);
+
+        assertThat(assigned)
+                .extracting(Card::id, Card::ordinal)
+                .containsExactly(tuple("3", 0), tuple("1", ORDINAL_GAP), tuple("2", 2 * ORDINAL_GAP));
+    }
+
+    @Test
+    public void When_CardsInsertedBetween_Should_SpreadThemEvenly() {
+        var existing = List.of(createCard("1", 100), createCard("2", 400));
+        var cards = List.of(createCard("1", null), createCard("3", null), createCard("4", null), createCard("2", null));
+
+        var assigned = SparseOrdinals.assign(existing, cards);
+
+        assertThat(assigned).extracting(Card::ordinal).containsExactly(100, 200, 300, 400);
+    }
+
+    @Test
+    public void When_CardMoved_Should_ChangeOnlyItsOrdinal() {
+        var existing = List.of(
+                createCard("1", ORDINAL_GAP),
+                createCard("2", 2 * ORDINAL_GAP),
+                createCard("3", 3 * ORDINAL_GAP),
+                createCard("4", 4 * ORDINAL_GAP)
+        );
+        var cards = List.of(createCard("2", null), createCard("3", null), createCard("1", null), createCard("4", null));
+
+        var assigned = SparseOrdinals.assign(existing, cards);
+
+        assertThat(assigned)
+                .extracting(Card::id, Card::ordinal)
+                .containsExactly(
+                        tuple("2", 2 * ORDINAL_GAP),
+                        tuple("3", 3 * ORDINAL_GAP),
+                        tuple("1", 3 * ORDINAL_GAP + ORDINAL_GAP / 2),
+                        tuple("4", 4 * ORDINAL_GAP)
+                );
+    }
+
+    @Test
+    public void When_NoRoomBetweenCards_Should_RenumberAll() {
+        var existing = List.of(createCard("1", 1), createCard("2", 2));
+        var cards = List.of(createCard("1", null), createCard("3", null), createCard("2", null));
+
+        var assigned = SparseOrdinals.assign(existing, cards);
+
+        assertThat(assigned)
+                .extracting(Card::id, Card::ordinal)
+                .containsExactly(tuple("1", ORDINAL_GAP), tuple("3", 2 * ORDINAL_GAP), tuple("2", 3 * ORDINAL_GAP));
+    }
+
+    private static Card createCard(String id, Integer ordinal) {
+        return new Card(id, ordinal, new CardFront("term-" + id), null, null, null);
+    }
+}